@@ -79,7 +79,7 @@ public class AssignmentAgent implements Runnable {
         // create a new TrajectoryPlanner
         this.tp = new TrajectoryPlanner();
         // go to the Poached Eggs episode page
-		ActionRobot.GoFromMainMenuToLevelSelection();
+		ActionRobot.GoFromMainMenuToLevelSelection(aRobot.getEndpoint());
 	}
 
     /**
@@ -115,7 +115,7 @@ public class AssignmentAgent implements Runnable {
                         }
 
                         // get the score at the end of the level
-                        int score = StateUtil.getScore(ActionRobot.proxy);
+                        int score = StateUtil.getScore(aRobot.getEndpoint());
                         // if there is no score stored for this level
                         if (!scores.containsKey(currentLevel)) {
                             // add it to the stores
@@ -173,7 +173,7 @@ public class AssignmentAgent implements Runnable {
                         System.out.println("Unexpected main menu page, go to the " +
                                 "last current level : " + currentLevel);
                         // go to the level selection screen
-                        ActionRobot.GoFromMainMenuToLevelSelection();
+                        ActionRobot.GoFromMainMenuToLevelSelection(aRobot.getEndpoint());
                         // attempt to load the current level
                         aRobot.loadLevel(currentLevel);
                         // done
@@ -184,7 +184,7 @@ public class AssignmentAgent implements Runnable {
                         System.out.println("Unexpected episode menu page, go to the " +
                                 "last current level : " + currentLevel);
                         // go to the level selection screen
-                        ActionRobot.GoFromMainMenuToLevelSelection();
+                        ActionRobot.GoFromMainMenuToLevelSelection(aRobot.getEndpoint());
                         // attempt to load the current level
                         aRobot.loadLevel(currentLevel);
                         // done
@@ -227,7 +227,9 @@ public class AssignmentAgent implements Runnable {
      */
 	public GameState solve() throws Exception {
 		// process image
-		Vision initialVision = new Vision(ActionRobot.doScreenShot());
+		Vision initialVision = new Vision(ActionRobot.doScreenShot(aRobot.getEndpoint()));
+		// hand the screenshot back to the pool, the vision keeps its pixels
+		initialVision.release();
 
 		// find the slingshot
 		Rectangle sling = initialVision.findSlingshotMBR();
@@ -240,9 +242,11 @@ public class AssignmentAgent implements Runnable {
             // warning
 			System.out.println("No slingshot detected. Please remove pop up or zoom out");
             // zoom out
-			ActionRobot.fullyZoomOut();
+			ActionRobot.fullyZoomOut(aRobot.getEndpoint());
             // create a Vision from the screenshot
-            initialVision = new Vision(ActionRobot.doScreenShot());
+            initialVision = new Vision(ActionRobot.doScreenShot(aRobot.getEndpoint()));
+            // hand the screenshot back to the pool
+            initialVision.release();
             // find the new sling
 			sling = initialVision.findSlingshotMBR();
 		}
@@ -518,10 +522,12 @@ public class AssignmentAgent implements Runnable {
                 prevTarget = new Point(_tpt.x, _tpt.y);
 
 				// zoom out the screen
-                ActionRobot.fullyZoomOut();
+                ActionRobot.fullyZoomOut(aRobot.getEndpoint());
 
                 // take a screenshot of the page
-                Vision vision = new Vision(ActionRobot.doScreenShot());
+                Vision vision = new Vision(ActionRobot.doScreenShot(aRobot.getEndpoint()));
+                // hand the screenshot back to the pool
+                vision.release();
 
                 // find the slingshot rectangle
                 Rectangle _sling = vision.findSlingshotMBR();
@@ -543,7 +549,9 @@ public class AssignmentAgent implements Runnable {
                             // if the game is still playing
                             if (state == GameState.PLAYING) {
                                 // screenshot and adjust trajectory
-                                vision = new Vision(ActionRobot.doScreenShot());
+                                vision = new Vision(ActionRobot.doScreenShot(aRobot.getEndpoint()));
+                                // hand the screenshot back to the pool
+                                vision.release();
                                 List<Point> traj = vision.findTrajPoints();
                                 tp.adjustTrajectory(traj, sling, releasePoint);
                             }
@@ -10,21 +10,22 @@ package ab.demo.other;
 
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 
-import javax.imageio.ImageIO;
-
+import ab.server.FrameCache;
+import ab.server.FramePool;
 import ab.server.Proxy;
+import ab.server.ProxyEndpoint;
+import ab.server.ProxyMetrics;
+import ab.server.ProxySession;
+import ab.server.proxy.message.ProxyBatchMessage;
 import ab.server.proxy.message.ProxyClickMessage;
 import ab.server.proxy.message.ProxyDragMessage;
-import ab.server.proxy.message.ProxyMouseWheelMessage;
-import ab.server.proxy.message.ProxyScreenshotMessage;
+import ab.server.proxy.message.ProxyRawScreenshotMessage;
 import ab.utils.StateUtil;
 import ab.vision.ABObject;
 import ab.vision.ABType;
@@ -36,15 +37,18 @@ import ab.vision.Vision;
  * 
  */
 public class ActionRobot {
-	public static Proxy proxy;
+	// the server standalone robots share; each robot is bound to one of its sessions
+	private static Proxy server;
+	// the game this robot plays
+	private final ProxyEndpoint endpoint;
 	public String level_status = "UNKNOWN";
 	public int current_score = 0;
 	private LoadLevelSchema lls;
 	private RestartLevelSchema rls;
 	static {
-		if (proxy == null) {
+		if (server == null) {
 			try {
-				proxy = new Proxy(9000) {
+				server = new Proxy(9000) {
 					@Override
 					public void onOpen() {
 						System.out.println("Client connected");
@@ -55,13 +59,13 @@ public class ActionRobot {
 						System.out.println("Client disconnected");
 					}
 				};
-				proxy.start();
+				server.start();
 
 				System.out
-						.println("Server started on port: " + proxy.getPort());
+						.println("Server started on port: " + server.getPort());
 
 				System.out.println("Waiting for client to connect");
-				proxy.waitForClients(1);
+				server.waitForClients(1);
 
 			} catch (UnknownHostException e) {
 
@@ -71,17 +75,49 @@ public class ActionRobot {
 	}
 
 	// A java util class for the standalone version. It provides common
-	// functions an agent would use. E.g. get the screenshot
+	// functions an agent would use. E.g. get the screenshot. The robot is
+	// bound to the game that connected first, for good; to play several
+	// games use ActionRobot(ProxyEndpoint) with getServer().getSessions()
 	public ActionRobot() {
-		lls = new LoadLevelSchema(proxy);
-		rls = new RestartLevelSchema(proxy);
+		this(firstSession());
+	}
+
+	// bind the robot to one game, e.g. a ProxySession when several clients
+	// are connected to the same proxy
+	public ActionRobot(ProxyEndpoint endpoint) {
+		this.endpoint = endpoint;
+		lls = new LoadLevelSchema(endpoint);
+		rls = new RestartLevelSchema(endpoint);
+	}
+
+	public ProxyEndpoint getEndpoint() {
+		return endpoint;
+	}
+
+	public static Proxy getServer() {
+		return server;
+	}
+
+	// the oldest connected game, waiting for one if it has gone
+	private static ProxySession firstSession() {
+		while (true) {
+			for (ProxySession session : server.getSessions()) {
+				if (session.isOpen()) {
+					return session;
+				}
+			}
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+			}
+		}
 	}
 
 	public void restartLevel() {
 		rls.restartLevel();
 	}
 
-	public static void GoFromMainMenuToLevelSelection() {
+	public static void GoFromMainMenuToLevelSelection(ProxyEndpoint proxy) {
 		// --- go from the main menu to the episode menu
 		GameState state = StateUtil.getGameState(proxy);
 		while (state == GameState.MAIN_MENU) {
@@ -114,20 +150,20 @@ public class ActionRobot {
 
 	public GameState shootWithStateInfoReturned(List<Shot> csc) {
 		ShootingSchema ss = new ShootingSchema();
-		ss.shoot(proxy, csc);
+		ss.shoot(endpoint, csc);
 		System.out.println("Shooting Completed");
-		return StateUtil.getGameState(proxy);
+		return StateUtil.getGameState(endpoint);
 
 	}
 
 	public synchronized GameState getState() {
-		return StateUtil.getGameState(proxy);
+		return StateUtil.getGameState(endpoint);
 	}
 
 	public void shoot(List<Shot> csc) {
 		ShootingSchema ss = new ShootingSchema();
 
-		ss.shoot(proxy, csc);
+		ss.shoot(endpoint, csc);
 		System.out.println("Shooting Completed");
 		System.out
 				.println("wait 15 seconds to ensure all objects in the scene static");
@@ -143,7 +179,7 @@ public class ActionRobot {
 		ShootingSchema ss = new ShootingSchema();
 		LinkedList<Shot> shots = new LinkedList<Shot>();
 		shots.add(shot);
-		ss.shoot(proxy, shots);
+		ss.shoot(endpoint, shots);
 		System.out.println("Shooting Completed");
 		try {
 			Thread.sleep(10000);
@@ -157,25 +193,25 @@ public class ActionRobot {
 		ShootingSchema ss = new ShootingSchema();
 		LinkedList<Shot> shots = new LinkedList<Shot>();
 		shots.add(shot);
-		ss.shoot(proxy, shots);
+		ss.shoot(endpoint, shots);
 	}
 
 	public void fshoot(Shot shot) {
 		ShootingSchema ss = new ShootingSchema();
 		LinkedList<Shot> shots = new LinkedList<Shot>();
 		shots.add(shot);
-		ss.shoot(proxy, shots);
+		ss.shoot(endpoint, shots);
 		// System.out.println(" tap time : " + shot.getT_tap());
 		System.out.println("Shooting Completed");
 
 	}
 
 	public void click() {
-		proxy.send(new ProxyClickMessage(100, 100));
+		endpoint.send(new ProxyClickMessage(100, 100));
 	}
 
 	public void drag() {
-		proxy.send(new ProxyDragMessage(0, 0, 0, 0));
+		endpoint.send(new ProxyDragMessage(0, 0, 0, 0));
 	}
 
 	public void loadLevel(int... i) {
@@ -187,11 +223,8 @@ public class ActionRobot {
 		lls.loadLevel(level);
 	}
 
-	public static void fullyZoomOut() {
-		for (int k = 0; k < 15; k++) {
-
-			proxy.send(new ProxyMouseWheelMessage(-1));
-		}
+	public static void fullyZoomOut(ProxyEndpoint proxy) {
+		proxy.send(ProxyBatchMessage.mouseWheel(-1, 15));
 		try {
 			Thread.sleep(2000);
 		} catch (InterruptedException e) {
@@ -199,10 +232,8 @@ public class ActionRobot {
 		}
 	}
 
-	public static void fullyZoomIn() {
-		for (int k = 0; k < 15; k++) {
-			proxy.send(new ProxyMouseWheelMessage(1));
-		}
+	public static void fullyZoomIn(ProxyEndpoint proxy) {
+		proxy.send(ProxyBatchMessage.mouseWheel(1, 15));
 		try {
 			Thread.sleep(2000);
 		} catch (InterruptedException e) {
@@ -210,16 +241,11 @@ public class ActionRobot {
 		}
 	}
 
-	public static BufferedImage doScreenShot() {
-		byte[] imageBytes = proxy.send(new ProxyScreenshotMessage());
-		BufferedImage image = null;
-		try {
-			image = ImageIO.read(new ByteArrayInputStream(imageBytes));
-		} catch (IOException e) {
-
-		}
-
-		return image;
+	// the returned image may be shared with other callers, do not draw on it;
+	// hand it back with FramePool.recycle() or Vision.release() when done
+	public static BufferedImage doScreenShot(ProxyEndpoint proxy) {
+		FrameCache cache = proxy.getFrameCache();
+		return (cache == null) ? null : cache.getFrame();
 	}
 	/*
 	 * @return the type of the bird on the sling.
@@ -227,8 +253,8 @@ public class ActionRobot {
 	 * **/
 	public ABType getBirdTypeOnSling()
 	{
-		fullyZoomIn();
-		BufferedImage screenshot = doScreenShot();
+		fullyZoomIn(endpoint);
+		BufferedImage screenshot = doScreenShot(endpoint);
 		Vision vision = new Vision(screenshot);
 		try {
 			Thread.sleep(1000);
@@ -236,8 +262,9 @@ public class ActionRobot {
 			
 			e.printStackTrace();
 		}
-		fullyZoomOut();
+		fullyZoomOut(endpoint);
 		List<ABObject> _birds = vision.findBirdsMBR();
+		vision.release();
 		if(_birds.isEmpty()) {
             return ABType.Unknown;
         }
@@ -252,24 +279,34 @@ public class ActionRobot {
 
 	public static void main(String args[]) {
 
+		ProxyEndpoint game = new ActionRobot().getEndpoint();
+		// bypass the frame cache, every iteration should hit the game
+		FramePool pool = FramePool.getShared();
 		long time = System.currentTimeMillis();
-		ActionRobot.doScreenShot();
+		FramePool.recycle(game.send(new ProxyRawScreenshotMessage(pool)));
 		time = System.currentTimeMillis() - time;
 		System.out.println(" cost: " + time);
 		time = System.currentTimeMillis();
 		int count = 0;
 		while (count < 40) {
-			ActionRobot.doScreenShot();
+			FramePool.recycle(game.send(new ProxyRawScreenshotMessage(pool)));
 			count++;
 		}
 
 		System.out.println(" time to take 40 screenshots"
 				+ (System.currentTimeMillis() - time));
+		ProxyMetrics metrics = server.getMetrics();
+		System.out.println(" screenshot round trip p50/p99 (us): "
+				+ metrics.getLatencyPercentile("screenshot", 50) + "/"
+				+ metrics.getLatencyPercentile("screenshot", 99)
+				+ " decode p50/p99 (us): "
+				+ metrics.getDecodePercentile("screenshot", 50) + "/"
+				+ metrics.getDecodePercentile("screenshot", 99));
 		System.exit(0);
 
 	}
 
 	public int getScore() {
-		return StateUtil.getScore(ActionRobot.proxy);
+		return StateUtil.getScore(endpoint);
 	}
 }
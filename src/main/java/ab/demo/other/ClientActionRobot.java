@@ -9,13 +9,29 @@
 
 package ab.demo.other;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.Socket;
-import java.net.UnknownHostException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import ab.server.FramePool;
+import ab.server.SharedFrameRing;
+import ab.vision.FrameBuffer;
 
 import external.ClientMessageEncoder;
 import external.ClientMessageTable;
@@ -23,92 +39,376 @@ import external.ClientMessageTable;
  * A server/client version of the java util class that encodes client messages and decodes 
  * the corresponding server messages complying with the protocols. Its subclass is ClientActionRobotJava.java 
  * which decodes the received server messages into java objects.
+ * 
+ * Replies are read with blocking full reads on a SocketChannel into buffers
+ * owned by the robot, always exactly as many bytes as the protocol defines
+ * for the reply, so a screenshot (about 1.2MB) lands in one reusable buffer
+ * instead of being copied through thousands of small arrays.
+ * A robot is not thread safe; use one per thread.
+ * 
+ * Screenshots are unpacked straight into the int raster of a TYPE_INT_RGB
+ * image taken from the shared FramePool; callers that are done with one may
+ * hand it back with FramePool.recycle (or Vision.release()).
+ * 
+ * When the game client runs on the same host and publishes to a
+ * SharedFrameRing (system property ab.frameRing, or setFrameRing),
+ * screenshots are read from the ring instead of the socket; the server is
+ * only asked if the ring stalls.
  * */
 public class ClientActionRobot {
-	Socket requestSocket;
-	OutputStream out;
-	InputStream in;
+	// the competition server listens on this port
+	public static final int PORT = 2004;
+	// system property with the default server address, see address(String)
+	public static final String SERVER_PROPERTY = "ab.server";
+	private static final String UNIX_PREFIX = "unix:";
+	// largest screenshot accepted, anything bigger is a corrupt header
+	private static final int MAX_FRAME_PIXELS = 2048 * 2048;
+
+	SocketChannel channel;
+	// outgoing message, grown when a long shot sequence doesn't fit
+	private ByteBuffer request = ByteBuffer.allocate(256);
+	// fixed-size replies
+	private final ByteBuffer reply = ByteBuffer.allocateDirect(256);
+	// raw RGB screenshot, sized on the first screenshot
+	private ByteBuffer frame = null;
+	// unpack screenshots on all cores, see setParallelDecode
+	private boolean parallelDecode = false;
+	private static final int BANDS = Runtime.getRuntime().availableProcessors();
+	// screenshots from a co-located client, null to use the socket
+	private SharedFrameRing frameRing = null;
+	// milliseconds to wait for a ring frame newer than the request
+	private static final long RING_WAIT = 500;
+	// milliseconds to wait for each further byte of a shot acknowledgement
+	private static final long SHOT_REPLY_WAIT = 200;
 
 	public ClientActionRobot(String... ip) {
-		String _ip = "localhost";
-		if (ip.length > 0) {
-			_ip = ip[0];
-		}
+		this(address((ip.length > 0) ? ip[0]
+				: System.getProperty(SERVER_PROPERTY, "localhost")));
+	}
+
+	public ClientActionRobot(String _ip, int port) {
+		this(InetSocketAddress.createUnresolved(_ip, port));
+	}
+
+	public ClientActionRobot(SocketAddress address) {
 		try {
 			// 1. creating a socket to connect to the server
-			requestSocket = new Socket(_ip, 2004);
-			requestSocket.setReceiveBufferSize(100000);
-			System.out.println("Connected to " + _ip + " in port 2004");
-			out = requestSocket.getOutputStream();
-			out.flush();
-			in = requestSocket.getInputStream();
-		} catch (UnknownHostException unknownHost) {
+			if (address instanceof UnixDomainSocketAddress) {
+				channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+				channel.connect(address);
+			} else {
+				InetSocketAddress inet = (InetSocketAddress) address;
+				if (inet.isUnresolved())
+					inet = new InetSocketAddress(inet.getHostString(), inet.getPort());
+				channel = SocketChannel.open(inet);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			}
+			channel.setOption(StandardSocketOptions.SO_RCVBUF, 100000);
+			System.out.println("Connected to " + describe(address));
+		} catch (UnresolvedAddressException unknownHost) {
 			System.err.println("You are trying to connect to an unknown host!");
 		} catch (IOException ioException) {
 			ioException.printStackTrace();
 		}
+		try {
+			frameRing = SharedFrameRing.openConfigured();
+		} catch (IOException e) {
+			System.err.println("Not using the frame ring: " + e.getMessage());
+		}
+	}
+
+	// take screenshots from the given ring, null to go back to the socket
+	public void setFrameRing(SharedFrameRing ring) {
+		frameRing = ring;
+	}
+
+	public SharedFrameRing getFrameRing() {
+		return frameRing;
+	}
+
+	/**
+	 * Parse a server address: unix:<path> for a Unix domain socket (server
+	 * and agent on the same machine, skipping the loopback TCP stack),
+	 * otherwise host, host:port, [ipv6] or [ipv6]:port, the port defaulting
+	 * to 2004. A bare IPv6 literal such as ::1 is a host without a port.
+	 * 
+	 * @throws IllegalArgumentException if the port is not a number in range
+	 *         or a bracketed host is malformed
+	 * */
+	public static SocketAddress address(String server) {
+		if (server.startsWith(UNIX_PREFIX))
+			return UnixDomainSocketAddress.of(server.substring(UNIX_PREFIX.length()));
+		if (server.startsWith("[")) {
+			int close = server.indexOf(']');
+			if (close < 0)
+				throw new IllegalArgumentException("missing ']' in " + server);
+			String host = server.substring(1, close);
+			String rest = server.substring(close + 1);
+			if (rest.isEmpty())
+				return InetSocketAddress.createUnresolved(host, PORT);
+			if (!rest.startsWith(":"))
+				throw new IllegalArgumentException("expected :port after ']' in " + server);
+			return InetSocketAddress.createUnresolved(host, port(rest.substring(1), server));
+		}
+		int colon = server.indexOf(':');
+		// more than one colon is an IPv6 literal, which only carries a port
+		// in brackets
+		if (colon >= 0 && colon == server.lastIndexOf(':'))
+			return InetSocketAddress.createUnresolved(server.substring(0, colon),
+					port(server.substring(colon + 1), server));
+		return InetSocketAddress.createUnresolved(server, PORT);
+	}
+
+	private static int port(String port, String server) {
+		try {
+			int p = Integer.parseInt(port);
+			if (p >= 0 && p <= 0xffff)
+				return p;
+		} catch (NumberFormatException e) {
+		}
+		throw new IllegalArgumentException("bad port '" + port + "' in " + server);
+	}
+
+	// inverse of address(String)
+	public static String describe(SocketAddress address) {
+		if (address instanceof UnixDomainSocketAddress)
+			return UNIX_PREFIX + ((UnixDomainSocketAddress) address).getPath();
+		InetSocketAddress inet = (InetSocketAddress) address;
+		String host = inet.getHostString();
+		if (host.indexOf(':') >= 0)
+			host = "[" + host + "]";
+		return host + ":" + inet.getPort();
+	}
+
+	// true while the connection is usable. A failed request closes it, since
+	// the reply stream can't be trusted to be in step any more
+	public boolean isConnected() {
+		return channel != null && channel.isOpen();
+	}
+
+	public void close() {
+		try {
+			if (channel != null)
+				channel.close();
+		} catch (IOException e) {
+		}
+	}
+
+	private void failed(IOException e) {
+		e.printStackTrace();
+		close();
+	}
+
+	// the request buffer, cleared, with room for length bytes
+	ByteBuffer request(int length) {
+		if (request.capacity() < length)
+			request = ByteBuffer.allocate(length);
+		request.clear();
+		return request;
+	}
+
+	// write the whole request in one go (a shot sequence leaves as one
+	// write, not one per shot)
+	void send() throws IOException {
+		request.flip();
+		while (request.hasRemaining())
+			channel.write(request);
+	}
+
+	// send a message that is just its opcode
+	private void send(ClientMessageTable message) throws IOException {
+		ClientMessageEncoder.put(request(1), message);
+		send();
+	}
+
+	// read exactly buffer.remaining() bytes, then flip the buffer for reading
+	private void readFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0)
+				throw new EOFException("server closed the connection");
+		}
+		buffer.flip();
+	}
+
+	// read a reply of exactly length bytes into the reply buffer
+	private ByteBuffer readReply(int length) throws IOException {
+		reply.clear();
+		reply.limit(length);
+		readFully(reply);
+		return reply;
+	}
+
+	private byte readByte() throws IOException {
+		return readReply(1).get();
+	}
+
+	// the public methods hand the bytes to the caller to keep (agents compare
+	// old and new scores), so the array is per call; the reply itself is
+	// read into the reusable buffer
+	private byte[] readBytes(int length) throws IOException {
+		return toArray(readReply(length));
+	}
+
+	private static byte[] toArray(ByteBuffer buffer) {
+		byte[] result = new byte[buffer.remaining()];
+		buffer.get(result);
+		return result;
+	}
+
+	/**
+	 * Read until the buffer is full, waiting at most wait milliseconds for
+	 * each further byte. The buffer is left unflipped.
+	 * 
+	 * @return false if the wait ran out first
+	 * */
+	private boolean readWithin(ByteBuffer buffer, long wait) throws IOException {
+		channel.configureBlocking(false);
+		try (Selector selector = Selector.open()) {
+			channel.register(selector, SelectionKey.OP_READ);
+			long deadline = System.nanoTime() + wait * 1000000L;
+			while (buffer.hasRemaining()) {
+				long left = (deadline - System.nanoTime()) / 1000000L;
+				if (left <= 0)
+					return false;
+				selector.select(left);
+				selector.selectedKeys().clear();
+				int read = channel.read(buffer);
+				if (read < 0)
+					throw new EOFException("server closed the connection");
+				if (read > 0)
+					deadline = System.nanoTime() + wait * 1000000L;
+			}
+			return true;
+		} finally {
+			// closing the selector above deregistered the channel
+			if (channel.isOpen())
+				channel.configureBlocking(true);
+		}
+	}
+
+	/**
+	 * Read the acknowledgement of a shot or shot sequence. The framework's
+	 * own server (LocalCompetitionServer) sends one byte per shot, but no
+	 * protocol document fixes that, so only the first byte is waited for;
+	 * the rest, up to one byte per shot, is taken as long as it keeps
+	 * arriving within SHOT_REPLY_WAIT. A server that sends a single byte
+	 * costs one such wait per sequence instead of hanging the agent.
+	 * */
+	private byte[] readShotReply(int shots) throws IOException {
+		final int length = ClientMessageEncoder.shotReplyLength(shots);
+		readReply(1);
+		if (length > 1) {
+			reply.position(1).limit(length);
+			readWithin(reply, SHOT_REPLY_WAIT);
+			reply.flip();
+		}
+		return toArray(reply);
 	}
 
 	public  BufferedImage doScreenShot() {
+		// like the server, answer with a frame taken after the request
+		SharedFrameRing ring = frameRing;
+		if (ring != null && ring.await(System.currentTimeMillis(), RING_WAIT) >= 0)
+			return ring.readFrame(FramePool.getShared());
+
 		BufferedImage bfImage = null;
 		try {
-			// 2. get Input and Output streams
-			byte[] doScreenShot = ClientMessageEncoder.encodeDoScreenShot();
-			out.write(doScreenShot);
-			out.flush();
+			send(ClientMessageTable.doScreenShot);
 			// System.out.println("client executes command: screen shot");
 
 			//Read the message head : 4-byte width and 4-byte height, respectively
-			byte[] bytewidth = new byte[4];
-			byte[] byteheight = new byte[4];
-			int width, height;
-			in.read(bytewidth);
-			width = bytesToInt(bytewidth);
-			in.read(byteheight);
-			height = bytesToInt(byteheight);
+			ByteBuffer head = readReply(8);
+			int width = head.getInt();
+			int height = head.getInt();
+			if (width <= 0 || height <= 0 || (long) width * height > MAX_FRAME_PIXELS)
+				throw new IOException("bad screenshot size " + width + "x" + height);
 			
 			//initialize total bytes of the screenshot message
 			//not include the head
 			int totalBytes = width * height * 3;
 
 			//read the raw RGB data
-			byte[] bytebuffer;
 			//System.out.println(width + "  " + height);
-			byte[] imgbyte = new byte[totalBytes];
-			int hasReadBytes = 0;
-			while (hasReadBytes < totalBytes) {
-				bytebuffer = new byte[2048];
-				int nBytes = in.read(bytebuffer);
-				if (nBytes != -1)
-					System.arraycopy(bytebuffer, 0, imgbyte, hasReadBytes,
-							nBytes);
-				else
-					break;
-				hasReadBytes += nBytes;
-			}
-			
-			//set RGB data using BufferedImage  
-			bfImage = new BufferedImage(width, height,
+			if (frame == null || frame.capacity() < totalBytes)
+				frame = ByteBuffer.allocate(totalBytes);
+			frame.clear();
+			frame.limit(totalBytes);
+			readFully(frame);
+
+			//pack the RGB data into the raster of the image, straight from
+			//the buffer's backing array
+			bfImage = FramePool.getShared().acquire(width, height,
 					BufferedImage.TYPE_INT_RGB);
-			for (int y = 0; y < height; y++) {
-				for (int x = 0; x < width; x++) {
-					int R = imgbyte[(y * width + x) * 3] & 0xff;
-					int G = imgbyte[(y * width + x) * 3 + 1] & 0xff;
-					int B = imgbyte[(y * width + x) * 3 + 2] & 0xff;
-					Color color = new Color(R, G, B);
-					int rgb;
-					rgb = color.getRGB();
-					bfImage.setRGB(x, y, rgb);
-				}
-			}
+			int[] pixels = ((DataBufferInt) bfImage.getRaster()
+					.getDataBuffer()).getData();
+			if (parallelDecode && BANDS > 1)
+				unpackParallel(frame.array(), pixels, width, height);
+			else
+				unpack(frame.array(), pixels, width, 0, height);
 			
 		} catch (IOException ioException) {
-			ioException.printStackTrace();
+			failed(ioException);
 		}
 		return bfImage;
 
 	}
 
+	/**
+	 * Take a screenshot straight into a FrameBuffer. With a frame ring the
+	 * pixels are copied from the shared pages with no image in between.
+	 * 
+	 * @return false if no screenshot could be taken
+	 */
+	public boolean doScreenShot(FrameBuffer into) {
+		SharedFrameRing ring = frameRing;
+		if (ring != null && ring.await(System.currentTimeMillis(), RING_WAIT) >= 0)
+			return into.load(ring) >= 0;
+
+		BufferedImage image = doScreenShot();
+		if (image == null)
+			return false;
+		into.load(image);
+		FramePool.recycle(image);
+		return true;
+	}
+
+	/**
+	 * Unpack screenshots in row bands on all cores. Pays off on machines
+	 * with spare cores, where unpacking otherwise costs about as much as
+	 * the transfer itself.
+	 */
+	public void setParallelDecode(boolean parallel) {
+		parallelDecode = parallel;
+	}
+
+	//pack rows [fromRow, toRow) of 3-byte RGB pixels into 0xRRGGBB ints
+	private static void unpack(byte[] rgb, int[] pixels, int width,
+			int fromRow, int toRow) {
+		int i = fromRow * width * 3;
+		final int end = toRow * width;
+		for (int p = fromRow * width; p < end; p++, i += 3) {
+			pixels[p] = (rgb[i] & 0xff) << 16 | (rgb[i + 1] & 0xff) << 8
+					| (rgb[i + 2] & 0xff);
+		}
+	}
+
+	private static void unpackParallel(final byte[] rgb, final int[] pixels,
+			final int width, final int height) {
+		List<Callable<Void>> bands = new ArrayList<Callable<Void>>(BANDS);
+		for (int b = 0; b < BANDS; b++) {
+			final int from = height * b / BANDS;
+			final int to = height * (b + 1) / BANDS;
+			bands.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					unpack(rgb, pixels, width, from, to);
+					return null;
+				}
+			});
+		}
+		ForkJoinPool.commonPool().invokeAll(bands);
+	}
+
 	//convert a byte[4] array to int value
 	public int bytesToInt(byte... b) {
 		int value = 0;
@@ -132,12 +432,10 @@ public class ClientActionRobot {
 	//send message to fully zoom out
 	public byte fullyZoomOut() {
 		try {
-			out.write(ClientMessageEncoder.fullyZoomOut());
-			out.flush();
-			return (byte) in.read();
+			send(ClientMessageTable.fullyZoomOut);
+			return readByte();
 		} catch (IOException e) {
-
-			e.printStackTrace();
+			failed(e);
 		}
 		return 0;
 
@@ -146,24 +444,20 @@ public class ClientActionRobot {
 	//send message to fully zoom out
 	public byte fullyZoomIn() {
 		try {
-			out.write(ClientMessageEncoder.fullyZoomIn());
-			out.flush();
-			return (byte) in.read();
+			send(ClientMessageTable.fullyZoomIn);
+			return readByte();
 		} catch (IOException e) {
-
-			e.printStackTrace();
+			failed(e);
 		}
 		return 0;
 
 	}
 	public byte clickInCenter() {
 		try {
-			out.write(ClientMessageEncoder.clickInCenter());
-			out.flush();
-			return (byte) in.read();
+			send(ClientMessageTable.clickInCentre);
+			return readByte();
 		} catch (IOException e) {
-
-			e.printStackTrace();
+			failed(e);
 		}
 		return 0;
 	}
@@ -171,13 +465,11 @@ public class ClientActionRobot {
 	//register team id
 	public byte[] configure(byte[] team_id) {
 		try {
-			out.write(ClientMessageEncoder.configure(team_id));
-			out.flush();
-			byte[] result = new byte[4];
-			in.read(result);
-			return result;
+			ClientMessageEncoder.putConfigure(request(1 + team_id.length), team_id);
+			send();
+			return readBytes(4);
 		} catch (IOException e) {
-			e.printStackTrace();
+			failed(e);
 		}
 		return null;
 
@@ -186,12 +478,12 @@ public class ClientActionRobot {
 	//load a certain level
 	public byte loadLevel(byte... i) {
 		try {
-			
-			out.write(ClientMessageEncoder.loadLevel(i));
-			return (byte) in.read();
+			ClientMessageEncoder.putLoadLevel(request(2),
+					(i.length == 0) ? 0 : i[0]);
+			send();
+			return readByte();
 		} catch (IOException e) {
-
-			e.printStackTrace();
+			failed(e);
 		}
 		return 0;
 	}
@@ -200,10 +492,10 @@ public class ClientActionRobot {
 	//send a message to restart the level
 	public byte restartLevel() {
 		try {
-			out.write(ClientMessageEncoder.restart());
-			return (byte) in.read();
+			send(ClientMessageTable.restartLevel);
+			return readByte();
 		} catch (IOException e) {
-			e.printStackTrace();
+			failed(e);
 		}
 		return 0;
 
@@ -212,117 +504,154 @@ public class ClientActionRobot {
 	//send a shot message to execute a shot in the safe mode
 	public byte[] shoot(byte[] fx, byte[] fy, byte[] dx, byte[] dy, byte[] t1,
 			byte[] t2, boolean polar) {
-		byte[] inbuffer = new byte[16];
-		try {
-			if (polar)
-				out.write(ClientMessageEncoder.pshoot(fx, fy, dx, dy, t1, t2));
-			else
-				out.write(ClientMessageEncoder.cshoot(fx, fy, dx, dy, t1, t2));
-			out.flush();
-			in.read(inbuffer);
-			return inbuffer;
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return new byte[] { 0 };
+		return shoot(bytesToInt(fx), bytesToInt(fy), bytesToInt(dx),
+				bytesToInt(dy), bytesToInt(t1), bytesToInt(t2), polar);
+	}
+
+	//send a shot message using int values as input
+	public byte[] shoot(int fx, int fy, int dx, int dy, int t1, int t2,
+			boolean polar) {
+		return shoot(polar ? ClientMessageTable.pshoot
+				: ClientMessageTable.cshoot, fx, fy, dx, dy, t1, t2);
 	}
 	
 	//send a shot message to execute a shot in the fast mode
 	public byte[] shootFast(byte[] fx, byte[] fy, byte[] dx, byte[] dy, byte[] t1,
 			byte[] t2, boolean polar) {
-		byte[] inbuffer = new byte[16];
+		return shootFast(bytesToInt(fx), bytesToInt(fy), bytesToInt(dx),
+				bytesToInt(dy), bytesToInt(t1), bytesToInt(t2), polar);
+	}
+
+	//send a fast mode shot message using int values as input
+	public byte[] shootFast(int fx, int fy, int dx, int dy, int t1, int t2,
+			boolean polar) {
+		return shoot(polar ? ClientMessageTable.pFastshoot
+				: ClientMessageTable.cFastshoot, fx, fy, dx, dy, t1, t2);
+	}
+
+	private byte[] shoot(ClientMessageTable shot, int fx, int fy, int dx,
+			int dy, int t1, int t2) {
 		try {
-			if (polar)
-				out.write(ClientMessageEncoder.pFastshoot(fx, fy, dx, dy, t1, t2));
-			else
-				out.write(ClientMessageEncoder.cFastshoot(fx, fy, dx, dy, t1, t2));
-			out.flush();
-			in.read(inbuffer);
-			return inbuffer;
+			ClientMessageEncoder.putShot(request(ClientMessageEncoder.SHOT_LENGTH),
+					shot, fx, fy, dx, dy, t1, t2);
+			send();
+			return readShotReply(1);
 		} catch (IOException e) {
-			e.printStackTrace();
+			failed(e);
 		}
 		return new byte[] { 0 };
 	}
 
 	//send a sequence of shots message
 	public byte[] cshootSequence(byte[]... shots) {
-		byte[] inbuffer = new byte[16];
-
-		byte[] msg = ClientMessageEncoder.mergeArray(
-				new byte[] { ClientMessageTable
-						.getValue(ClientMessageTable.shootSeq) },
-				new byte[] { (byte) shots.length });
-		for (byte[] shot : shots) {
-			msg = ClientMessageEncoder.mergeArray(msg,
-					new byte[] { ClientMessageTable
-							.getValue(ClientMessageTable.cshoot) }, shot);
-		}
+		return shootSequence(ClientMessageTable.shootSeq, toInts(shots));
+	}
+
+	//send a shot sequence message using int arrays as input
+	//one array per shot: fx, fy, dx, dy, t1, t2
+	public byte[] cshootSequence(int[]... shots) {
+		return shootSequence(ClientMessageTable.shootSeq, shots);
+	}
+
+	//send a sequence of shots message in the fast mode
+	public byte[] cshootSequenceFast(byte[]... shots) {
+		return shootSequence(ClientMessageTable.shootSeqFast, toInts(shots));
+	}
+
+	public byte[] cshootSequenceFast(int[]... shots) {
+		return shootSequence(ClientMessageTable.shootSeqFast, shots);
+	}
 
+	private byte[] shootSequence(ClientMessageTable sequence, int[]... shots) {
 		try {
-			out.write(msg);
-			
-			in.read(inbuffer);
-			return inbuffer;
+			ClientMessageEncoder.putShotSequence(
+					request(ClientMessageEncoder.shotSequenceLength(shots.length)),
+					sequence, shots);
+			send();
+			return readShotReply(shots.length);
 		} catch (IOException e) {
-			e.printStackTrace();
+			failed(e);
 		}
 		return new byte[] { 0 };
 	}
 
+	//split shots given as 24 bytes (six big-endian ints) into int arrays
+	private int[][] toInts(byte[]... shots) {
+		int[][] result = new int[shots.length][6];
+		for (int i = 0; i < shots.length; i++)
+			for (int j = 0; j < 6; j++)
+				result[i][j] = bytesToInt(shots[i][j * 4], shots[i][j * 4 + 1],
+						shots[i][j * 4 + 2], shots[i][j * 4 + 3]);
+		return result;
+	}
+
+	//send a message to get the level currently played
+	public byte getCurrentLevel() {
+		try {
+			send(ClientMessageTable.getCurrentLevel);
+			return readByte();
+		} catch (IOException e) {
+			failed(e);
+		}
+		return 0;
+	}
 	
 	//send a message to get the current state
 	public byte getState() {
 		try {
-			out.write(ClientMessageEncoder.getState());
-			out.flush();
-			// System.out.println("IN READ  " + in.read());
-			return (byte) in.read();
+			send(ClientMessageTable.getState);
+			return readByte();
 		} catch (IOException e) {
-			e.printStackTrace();
+			failed(e);
 		}
 
 		return 0;
 	}
-	// send a message to score of each level
-	public byte[] getBestScores()
-	{
-		int level = 21;
-		int totalBytes = level * 4;
-		byte[] buffer = new byte[totalBytes];
+
+	/**
+	 * As getState(), giving up after timeout milliseconds, e.g. to check
+	 * that the server is still alive. A server that does not answer in time
+	 * is treated as gone and the connection is closed.
+	 * 
+	 * @return the state, or -1 if there was no answer in time
+	 * */
+	public byte getState(long timeout) {
 		try {
-			out.write(ClientMessageEncoder.getBestScores());
-			out.flush();
-		
-			in.read(buffer);
-		    return buffer; 
-			
-			
+			send(ClientMessageTable.getState);
+			reply.clear();
+			reply.limit(1);
+			if (!readWithin(reply, timeout))
+				throw new SocketTimeoutException("no reply to getState within "
+						+ timeout + "ms");
+			reply.flip();
+			return reply.get();
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			failed(e);
 		}
-		return buffer;	
+		return -1;
+	}
+	// send a message to score of each level
+	public byte[] getBestScores()
+	{
+		return readScores(ClientMessageTable.getBestScores);
 	}
 	// send a message to score of each level
 	public byte[] getMyScore()
 	{
+		return readScores(ClientMessageTable.getMyScore);
+	}
+
+	// one 4-byte score per level, all zero if the request failed
+	private byte[] readScores(ClientMessageTable message) {
 		int level = 21;
 		int totalBytes = level * 4;
-		byte[] buffer = new byte[totalBytes];
 		try {
-			out.write(ClientMessageEncoder.getMyScore());
-			out.flush();
-		
-			in.read(buffer);
-		    return buffer; 
-			
-			
+			send(message);
+			return readBytes(totalBytes);
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			failed(e);
 		}
-		return buffer;	
+		return new byte[totalBytes];
 	}
 
     @SuppressWarnings("InfiniteLoopStatement")
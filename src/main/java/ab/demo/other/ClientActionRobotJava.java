@@ -19,7 +19,6 @@ import ab.vision.ABObject;
 import ab.vision.ABType;
 import ab.vision.Vision;
 import ab.vision.GameStateExtractor.GameState;
-import external.ClientMessageEncoder;
 
 //Java interface of ClientActionRobot
 public class ClientActionRobotJava extends ClientActionRobot {
@@ -43,28 +42,6 @@ public class ClientActionRobotJava extends ClientActionRobot {
 		return _scores;
 	}
 	
-	//send a shot message using int values as input
-	public byte[] shoot(int fx, int fy, int dx, int dy, int t1, int t2,
-			boolean polar) {
-		return super.shoot(intToByteArray(fx), intToByteArray(fy),
-				intToByteArray(dx), intToByteArray(dy), intToByteArray(t1),
-				intToByteArray(t2), polar);
-	}
-
-	//send a shot sequence message using int arrays as input
-	//one array per shot
-	public byte[] cshootSequence(int[]... shots) {
-		byte[][] byteShots = new byte[shots.length][24] ;
-		int shotCount = 0;
-		for (int[] shot : shots) {
-			byteShots[shotCount] = ClientMessageEncoder.mergeArray(intToByteArray(shot[0])/*fx*/,
-					intToByteArray(shot[1])/*fy*/, intToByteArray(shot[2])/*dx*/,
-					intToByteArray(shot[3])/*dy*/, intToByteArray(shot[4])/*t1*/,
-					intToByteArray(shot[5])/*t2*/);
-			shotCount++;
-		}
-		return super.cshootSequence(byteShots);
-	}
 	public ABType getBirdTypeOnSling()
 	{
 		fullyZoomIn();
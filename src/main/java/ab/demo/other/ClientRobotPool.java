@@ -0,0 +1,280 @@
+/*****************************************************************************
+ ** ANGRYBIRDS AI AGENT FRAMEWORK
+ ** Copyright (c) 2014, XiaoYu (Gary) Ge, Stephen Gould, Jochen Renz
+ **  Sahan Abeyasinghe,Jim Keys,  Andrew Wang, Peng Zhang
+ ** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+ *****************************************************************************/
+
+package ab.demo.other;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of ClientActionRobots, connected to one or more competition
+ * servers, for running several agents from one JVM.
+ * 
+ * A robot is not thread safe, so it is only ever handed to one agent at a
+ * time: lease() blocks until a robot is idle and the Lease gives it back on
+ * close(). When choosing among idle robots the pool prefers the server with
+ * the fewest robots leased, so agents spread over the servers.
+ * 
+ * A robot whose connection failed is replaced when it is given back, and a
+ * background check pings idle robots with getState every few seconds and
+ * reconnects those that don't answer within PING_TIMEOUT, including servers
+ * that hang without closing the connection.
+ * 
+ * submit() runs an agent on the pool's own threads (one per core, or fewer
+ * if there are fewer robots), leasing a robot for it.
+ * 
+ * 	ClientRobotPool pool = new ClientRobotPool(2, "localhost:2004", "unix:/tmp/ab.sock");
+ * 	pool.submit(new ClientRobotPool.Agent() { ... });
+ * */
+public class ClientRobotPool {
+	// milliseconds an idle robot's server has to answer the health check
+	public static final long PING_TIMEOUT = 2000;
+
+	// something to run with a leased robot
+	public interface Agent {
+		void play(ClientActionRobot robot) throws Exception;
+	}
+
+	// exclusive use of one robot until closed
+	public class Lease implements AutoCloseable {
+		private final Slot slot;
+		private boolean closed = false;
+
+		private Lease(Slot slot) {
+			this.slot = slot;
+		}
+
+		public ClientActionRobot getRobot() {
+			if (closed)
+				throw new IllegalStateException("lease already closed");
+			return slot.robot;
+		}
+
+		// the server the robot is connected to, host:port or unix:path
+		public String getServer() {
+			return ClientActionRobot.describe(slot.address);
+		}
+
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				release(slot);
+			}
+		}
+	}
+
+	// one connection
+	private static class Slot {
+		final SocketAddress address;
+		final int server;
+		volatile ClientActionRobot robot;
+		boolean leased = false;
+
+		Slot(SocketAddress address, int server) {
+			this.address = address;
+			this.server = server;
+		}
+
+		void connect() {
+			if (robot != null)
+				robot.close();
+			robot = new ClientActionRobot(address);
+		}
+	}
+
+	private final List<Slot> slots = new ArrayList<Slot>();
+	// leased robots by server
+	private final int[] load;
+	private final ExecutorService agents;
+	private final ScheduledExecutorService checker;
+	private boolean shutdown = false;
+	// where the next search for an idle robot starts, so ties rotate
+	private int next = 0;
+
+	/**
+	 * @param connections robots per server
+	 * @param servers address of each server: host, host:port (default port
+	 *        2004) or unix:path, see ClientActionRobot.address
+	 */
+	public ClientRobotPool(int connections, String... servers) {
+		if (servers.length == 0)
+			servers = new String[] { "localhost" };
+		load = new int[servers.length];
+		for (int i = 0; i < servers.length; i++) {
+			SocketAddress address = ClientActionRobot.address(servers[i]);
+			for (int c = 0; c < connections; c++) {
+				Slot slot = new Slot(address, i);
+				slot.connect();
+				slots.add(slot);
+			}
+		}
+
+		int threads = Math.min(Runtime.getRuntime().availableProcessors(), slots.size());
+		agents = Executors.newFixedThreadPool(threads, threads("robot-agent"));
+		checker = Executors.newSingleThreadScheduledExecutor(threads("robot-health"));
+		checker.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				checkIdle();
+			}
+		}, 5, 5, TimeUnit.SECONDS);
+	}
+
+	private static ThreadFactory threads(final String name) {
+		final AtomicInteger count = new AtomicInteger();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	/**
+	 * Wait for an idle, connected robot and lease it.
+	 * 
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws IllegalStateException if the pool was shut down
+	 * */
+	public Lease lease() throws InterruptedException {
+		return new Lease(take(0));
+	}
+
+	/**
+	 * As lease(), giving up after timeout milliseconds.
+	 * 
+	 * @return the lease, or null if no robot became idle in time
+	 * */
+	public Lease lease(long timeout) throws InterruptedException {
+		Slot slot = take(Math.max(timeout, 1));
+		return (slot == null) ? null : new Lease(slot);
+	}
+
+	// timeout 0 waits forever
+	private synchronized Slot take(long timeout) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + timeout;
+		while (true) {
+			if (shutdown)
+				throw new IllegalStateException("pool is shut down");
+			Slot best = null;
+			for (int i = 0; i < slots.size(); i++) {
+				Slot slot = slots.get((next + i) % slots.size());
+				if (!slot.leased && slot.robot.isConnected()
+						&& (best == null || load[slot.server] < load[best.server]))
+					best = slot;
+			}
+			if (best != null) {
+				best.leased = true;
+				load[best.server]++;
+				next = (slots.indexOf(best) + 1) % slots.size();
+				return best;
+			}
+
+			if (timeout == 0) {
+				wait();
+			} else {
+				long left = deadline - System.currentTimeMillis();
+				if (left <= 0)
+					return null;
+				wait(left);
+			}
+		}
+	}
+
+	private void release(Slot slot) {
+		// reconnect outside the lock, it may take a while
+		if (!slot.robot.isConnected() && !isShutdown())
+			slot.connect();
+		synchronized (this) {
+			slot.leased = false;
+			load[slot.server]--;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Run an agent with a leased robot on one of the pool's threads. The
+	 * robot is given back when the agent returns or throws.
+	 * */
+	public Future<?> submit(final Agent agent) {
+		return agents.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				Lease lease = lease();
+				try {
+					agent.play(lease.getRobot());
+				} finally {
+					lease.close();
+				}
+				return null;
+			}
+		});
+	}
+
+	// ping every idle robot, reconnect the ones that are down
+	private void checkIdle() {
+		// one at a time, so agents never wait for more than one ping
+		for (Slot slot : slots) {
+			synchronized (this) {
+				if (slot.leased || shutdown)
+					continue;
+				slot.leased = true;
+				load[slot.server]++;
+			}
+			if (slot.robot.isConnected())
+				slot.robot.getState(PING_TIMEOUT);
+			// release reconnects if the ping failed
+			release(slot);
+		}
+	}
+
+	// number of robots currently connected
+	public synchronized int getConnectedCount() {
+		int connected = 0;
+		for (Slot slot : slots) {
+			if (slot.robot.isConnected())
+				connected++;
+		}
+		return connected;
+	}
+
+	public int size() {
+		return slots.size();
+	}
+
+	private synchronized boolean isShutdown() {
+		return shutdown;
+	}
+
+	/**
+	 * Stop the agents and the health check and close every connection.
+	 * */
+	public void shutdown() {
+		synchronized (this) {
+			shutdown = true;
+			notifyAll();
+		}
+		agents.shutdownNow();
+		checker.shutdownNow();
+		for (Slot slot : slots)
+			slot.robot.close();
+	}
+}
@@ -8,9 +8,9 @@
 *****************************************************************************/
 package ab.demo.other;
 
-import ab.server.Proxy;
+import ab.server.ProxyEndpoint;
+import ab.server.proxy.message.ProxyBatchMessage;
 import ab.server.proxy.message.ProxyClickMessage;
-import ab.server.proxy.message.ProxyMouseWheelMessage;
 import ab.utils.StateUtil;
 import ab.vision.GameStateExtractor.GameState;
 
@@ -18,10 +18,10 @@ import ab.vision.GameStateExtractor.GameState;
  * Schema for loading level 
  * */
 public class LoadLevelSchema {
-private Proxy proxy;
+private ProxyEndpoint proxy;
 private boolean pageSwitch = false;
 
-public LoadLevelSchema(Proxy proxy)
+public LoadLevelSchema(ProxyEndpoint proxy)
 {
 	this.proxy = proxy;
 
@@ -63,100 +63,40 @@ public boolean loadLevel(int i)
 private boolean loadLevel(GameState state,int i)
 {
     // if still at main menu or episode menu, skip it. 
-	ActionRobot.GoFromMainMenuToLevelSelection();
+	ActionRobot.GoFromMainMenuToLevelSelection(proxy);
 	
+	// the whole menu sequence goes out as one batch, the client waits
+	// between the clicks for the menus to settle
+	ProxyBatchMessage batch = new ProxyBatchMessage();
 	
 	if(state == GameState.WON || state == GameState.LOST)
 	{
-	
 		/*if(state == GameState.WON && i >= current + 1)
-			  proxy.send(new ProxyClickMessage(500,375)); // go to the next level
-*/	/*if(state == GameState.WON)*/ { 
-		 
-		 	proxy.send(new ProxyClickMessage(342,382));//Click the left most button at the end page
-		 	try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e1) {
-				e1.printStackTrace();
-			}
-		 	if(pageSwitch)
-		 	{
-		 		 proxy.send(new ProxyClickMessage(378, 451)); 
-		 		try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e1) {
-					e1.printStackTrace();
-				}
-		 		pageSwitch = false;
-		 	}
-			 proxy.send(new ProxyClickMessage(54 + ((i-1)%7) * 86,110 + ((i-1)/7) * 100)); 
-		 try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-			
-				e.printStackTrace();
-			}
-	 }
-		 if(i == 1)
-		//skip the animation, the animation does not appear in the SD mode.
-			 proxy.send(new ProxyClickMessage(1176,704)); 
+			  batch.add(new ProxyClickMessage(500,375)); // go to the next level
+*/
+		batch.add(new ProxyClickMessage(342,382));//Click the left most button at the end page
 	}
 	else if(state == GameState.PLAYING)
-		{
-			proxy.send(new ProxyClickMessage(48,44));//Click the left most button, pause
-			  try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e1) {
-
-					e1.printStackTrace();
-				}
-			  proxy.send(new ProxyClickMessage(168,28));//Click the left most button, pause
-			  try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e1) {
-					e1.printStackTrace();
-				}
-			  if(pageSwitch)
-			 	{
-			 		 proxy.send(new ProxyClickMessage(378, 451)); 
-			 		try {
-						Thread.sleep(1000);
-					} catch (InterruptedException e1) {
-						e1.printStackTrace();
-					}
-			 		pageSwitch = false;
-			 	}
-				 proxy.send(new ProxyClickMessage(54 + ((i-1)%7) * 86,110 + ((i-1)/7) * 100)); 
-			  try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e) {
-		
-					e.printStackTrace();
-				}
-				 if(i == 1)
-					 proxy.send(new ProxyClickMessage(1176,704)); 
-		}
-	else
 	{
-		if(pageSwitch)
-	 	{
-	 		 proxy.send(new ProxyClickMessage(378, 451)); 
-	 		try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e1) {
-				e1.printStackTrace();
-			}
-	 		pageSwitch = false;
-	 	}
-		proxy.send(new ProxyClickMessage(54 + ((i-1)%7) * 86,110 + ((i-1)/7) * 100)); 
-		 try {
-			Thread.sleep(1000);
-		} catch (InterruptedException e) {
-		
-			e.printStackTrace();
-		}
-		 if(i == 1)
-			 proxy.send(new ProxyClickMessage(1176,704)); 
+		batch.add(new ProxyClickMessage(48,44));//Click the left most button, pause
+		batch.add(new ProxyClickMessage(168,28), 1000);//Click the left most button, pause
+	}
+	
+	if(pageSwitch)
+	{
+		batch.add(new ProxyClickMessage(378, 451), batch.isEmpty()? 0 : 1000);
+		pageSwitch = false;
+	}
+	batch.add(new ProxyClickMessage(54 + ((i-1)%7) * 86,110 + ((i-1)/7) * 100), batch.isEmpty()? 0 : 1000);
+	if(i == 1)
+		//skip the animation, the animation does not appear in the SD mode.
+		batch.add(new ProxyClickMessage(1176,704), 1000);
+	proxy.send(batch);
+	
+	try {
+		Thread.sleep(1000);
+	} catch (InterruptedException e) {
+		e.printStackTrace();
 	}
 	
 	  //Wait 9000 seconds for loading the level
@@ -176,11 +116,7 @@ private boolean loadLevel(GameState state,int i)
 	   
      if(_state == GameState.PLAYING){
 
-    
-	   for (int k = 0; k < 15; k++) 
-	   {
-		   proxy.send(new ProxyMouseWheelMessage(-1));
-	   }
+	   proxy.send(ProxyBatchMessage.mouseWheel(-1, 15));
 	   
 	   try {
 			Thread.sleep(2500);
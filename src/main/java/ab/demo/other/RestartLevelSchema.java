@@ -8,17 +8,17 @@
 *****************************************************************************/
 package ab.demo.other;
 
-import ab.server.Proxy;
+import ab.server.ProxyEndpoint;
+import ab.server.proxy.message.ProxyBatchMessage;
 import ab.server.proxy.message.ProxyClickMessage;
-import ab.server.proxy.message.ProxyMouseWheelMessage;
 import ab.utils.StateUtil;
 import ab.vision.GameStateExtractor.GameState;
 
 public class RestartLevelSchema {
-private Proxy proxy;
+private ProxyEndpoint proxy;
 
 //This schema is used for automatically restarting levels in the standalone version. 
-public RestartLevelSchema(Proxy proxy)
+public RestartLevelSchema(ProxyEndpoint proxy)
 {
 	this.proxy = proxy;
 }
@@ -55,10 +55,7 @@ public boolean restartLevel()
 		}
 	   //Zooming out
 	   System.out.println("Zooming out");
-	   for (int k = 0; k < 15; k++) 
-	   {
-		   proxy.send(new ProxyMouseWheelMessage(-1));
-	   }
+	   proxy.send(ProxyBatchMessage.mouseWheel(-1, 15));
 	   try {
 			Thread.sleep(2000);
 		} catch (InterruptedException e1) {
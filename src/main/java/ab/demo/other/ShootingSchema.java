@@ -13,7 +13,7 @@ import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 
-import ab.server.Proxy;
+import ab.server.ProxyEndpoint;
 import ab.server.proxy.message.ProxyDragMessage;
 
 /**
@@ -23,7 +23,7 @@ public class ShootingSchema {
 private boolean shootImmediately = true;
 
 
-public void shoot(final Proxy proxy,List<Shot> csc)
+public void shoot(final ProxyEndpoint proxy,List<Shot> csc)
 {
 	int count = 0;
 	LinkedList<Shot> shots = new LinkedList<Shot>();	
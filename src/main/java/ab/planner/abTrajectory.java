@@ -12,16 +12,14 @@ package ab.planner;
 import java.awt.Color;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.LinkedList;
 import java.util.List;
 
-import javax.imageio.ImageIO;
-
+import ab.server.FramePool;
 import ab.server.Proxy;
-import ab.server.proxy.message.ProxyScreenshotMessage;
+import ab.server.proxy.message.ProxyDeltaScreenshotMessage;
+import ab.utils.FramePipeline;
 import ab.utils.ImageSegFrame;
 import ab.vision.GameStateExtractor;
 import ab.vision.VisionMBR;
@@ -58,88 +56,93 @@ public class abTrajectory {
     }
 
     public BufferedImage doScreenShot() {
-	byte[] imageBytes = server.send(new ProxyScreenshotMessage());
-        BufferedImage image = null;
-        try {
-            image = ImageIO.read(new ByteArrayInputStream(imageBytes));
-        } catch (IOException e) {
-            // do something
-        }
-
-        return image;
+        return ProxyDeltaScreenshotMessage.screenshot(server);
     }
 
     public static void main(String args[]) {
-        abTrajectory ar = new abTrajectory();
-
-        ImageSegFrame frame = null;
-        GameStateExtractor gameStateExtractor = new GameStateExtractor();
-        TrajectoryPlanner trajectory = new TrajectoryPlanner();
-
-        while (true) {
-            // capture image
-            BufferedImage screenshot = ar.doScreenShot();
-            final int nHeight = screenshot.getHeight();
-            final int nWidth = screenshot.getWidth();
-
-            System.out.println("captured image of size " + nWidth + "-by-" + nHeight);
-
-            // extract game state
-            GameStateExtractor.GameState state = gameStateExtractor.getGameState(screenshot);
-            if (state != GameStateExtractor.GameState.PLAYING) {
-                continue;
-            }
-
-            // process image
-            VisionMBR vision = new VisionMBR(screenshot);
-            //List<Rectangle> pigs = vision.findPigsMBR();
+        new abTrajectory();
+
+        final GameStateExtractor gameStateExtractor = new GameStateExtractor();
+        final TrajectoryPlanner trajectory = new TrajectoryPlanner();
+
+        // capture, decode and analyse on separate threads, the analysis
+        // always works on the most recent screenshot
+        FramePipeline<byte[], BufferedImage> pipeline = FramePipeline.screenshots(server,
+                new FramePipeline.Analyse<BufferedImage>() {
+            ImageSegFrame frame = null;
+            // the pooled image on screen, recycled once replaced
+            BufferedImage shown = null;
+
+            @Override
+            public void analyse(BufferedImage screenshot) {
+                final int nHeight = screenshot.getHeight();
+                final int nWidth = screenshot.getWidth();
+
+                System.out.println("captured image of size " + nWidth + "-by-" + nHeight);
+
+                // extract game state
+                GameStateExtractor.GameState state = gameStateExtractor.getGameState(screenshot);
+                if (state != GameStateExtractor.GameState.PLAYING) {
+                    FramePool.recycle(screenshot);
+                    return;
+                }
+
+                // process image
+                VisionMBR vision = new VisionMBR(screenshot);
+                //List<Rectangle> pigs = vision.findPigsMBR();
             
-            List<Rectangle> redBirds = vision.findRedBirdsMBRs();
-            List<Rectangle> yellowBirds = vision.findYellowBirdsMBRs();
-            List<Rectangle> blueBirds = vision.findBlueBirdsMBRs();
-            List<Rectangle> whiteBirds = vision.findWhiteBirdsMBRs();
-            List<Rectangle> blackBirds = vision.findBlackBirdsMBRs();
-            List<Rectangle> birds = new LinkedList<Rectangle>();
-            birds.addAll(redBirds);
-            birds.addAll(yellowBirds);
-            birds.addAll(blueBirds);
-            birds.addAll(blackBirds);
-            birds.addAll(whiteBirds);
+                List<Rectangle> redBirds = vision.findRedBirdsMBRs();
+                List<Rectangle> yellowBirds = vision.findYellowBirdsMBRs();
+                List<Rectangle> blueBirds = vision.findBlueBirdsMBRs();
+                List<Rectangle> whiteBirds = vision.findWhiteBirdsMBRs();
+                List<Rectangle> blackBirds = vision.findBlackBirdsMBRs();
+                List<Rectangle> birds = new LinkedList<Rectangle>();
+                birds.addAll(redBirds);
+                birds.addAll(yellowBirds);
+                birds.addAll(blueBirds);
+                birds.addAll(blackBirds);
+                birds.addAll(whiteBirds);
             
-            Rectangle sling = vision.findSlingshotMBR();
-            if (sling == null) {
-                System.out.println("...could not find the slingshot");
-                continue;
-            }
-           // System.out.println("...found " + pigs.size() + " pigs and " + redBirds.size() + " birds");
-            System.out.println("...found slingshot at " + sling.toString());
-
-            // convert screenshot to grey scale and draw bounding boxes
-            //screenshot = VisionUtils.convert2grey(screenshot);
-            //VisionUtils.drawBoundingBoxes(screenshot, pigs, Color.GREEN);
-            VisionUtils.drawBoundingBoxes(screenshot, redBirds, Color.PINK);
-            VisionUtils.drawBoundingBox(screenshot, sling, Color.ORANGE);
-
-            // find active bird
-            Rectangle activeBird = trajectory.findActiveBird(birds);
-            if (activeBird == null) {
-                System.out.println("...could not find active bird");
-                continue;
-            }
-
-            trajectory.plotTrajectory(screenshot, sling, activeBird);
-
-            // show image
-            if (frame == null) {
-                frame = new ImageSegFrame("trajectory", screenshot);
-            } else {
-                frame.refresh(screenshot);
-            }
-
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
+                Rectangle sling = vision.findSlingshotMBR();
+                if (sling == null) {
+                    System.out.println("...could not find the slingshot");
+                    FramePool.recycle(screenshot);
+                    return;
+                }
+               // System.out.println("...found " + pigs.size() + " pigs and " + redBirds.size() + " birds");
+                System.out.println("...found slingshot at " + sling.toString());
+
+                // convert screenshot to grey scale and draw bounding boxes
+                //screenshot = VisionUtils.convert2grey(screenshot);
+                //VisionUtils.drawBoundingBoxes(screenshot, pigs, Color.GREEN);
+                VisionUtils.drawBoundingBoxes(screenshot, redBirds, Color.PINK);
+                VisionUtils.drawBoundingBox(screenshot, sling, Color.ORANGE);
+
+                // find active bird
+                Rectangle activeBird = trajectory.findActiveBird(birds);
+                if (activeBird == null) {
+                    System.out.println("...could not find active bird");
+                    FramePool.recycle(screenshot);
+                    return;
+                }
+
+                trajectory.plotTrajectory(screenshot, sling, activeBird);
+
+                // show image
+                if (frame == null) {
+                    frame = new ImageSegFrame("trajectory", screenshot);
+                } else {
+                    frame.refresh(screenshot);
+                }
+                FramePool.recycle(shown);
+                shown = screenshot;
             }
+        });
+        pipeline.setCaptureInterval(100);
+        pipeline.start();
+        try {
+            pipeline.join();
+        } catch (InterruptedException e) {
         }
     }
 }
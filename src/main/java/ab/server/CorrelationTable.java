@@ -0,0 +1,112 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/* CorrelationTable ------------------------------------------------------- */
+
+/**
+ * Lock-free table of in-flight messages keyed by their primitive id.
+ * 
+ * Ids are handed out sequentially, so id & mask spreads consecutive
+ * messages over distinct slots and no boxing or hashing is needed. When the
+ * home slot of an id is still held, e.g. by a request that waits forever,
+ * the next few slots are tried, and if those are held too the message goes
+ * to an overflow map. A long-lived request therefore never blocks the ids
+ * that wrap onto its slot; it only costs them a probe.
+ */
+class CorrelationTable {
+    // slots tried after the home slot before falling back to the overflow map
+    private static final int PROBES = 4;
+
+    private final AtomicReferenceArray<ProxyResult<?>> slots;
+    private final ConcurrentHashMap<Long, ProxyResult<?>> overflow =
+            new ConcurrentHashMap<Long, ProxyResult<?>>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int mask;
+
+    /**
+     * @param capacity number of messages that can be in flight before ids
+     *        start to collide, rounded up to a power of two
+     */
+    CorrelationTable(int capacity) {
+        int n = Integer.highestOneBit(Math.max(capacity - 1, PROBES)) << 1;
+        slots = new AtomicReferenceArray<ProxyResult<?>>(n);
+        mask = n - 1;
+    }
+
+    // register a pending result under its id
+    void put(ProxyResult<?> result) {
+        final int home = (int) (result.id & mask);
+        for (int probe = 0; probe <= PROBES; probe++) {
+            if (slots.compareAndSet((home + probe) & mask, null, result)) {
+                size.incrementAndGet();
+                return;
+            }
+        }
+        overflow.put(result.id, result);
+        size.incrementAndGet();
+    }
+
+    /**
+     * Remove and return the pending result for id, or null if there is none
+     * (already answered, removed, or never sent).
+     */
+    ProxyResult<?> remove(long id) {
+        final int home = (int) (id & mask);
+        for (int probe = 0; probe <= PROBES; probe++) {
+            final int slot = (home + probe) & mask;
+            ProxyResult<?> result = slots.get(slot);
+            if (result != null && result.id == id
+                    && slots.compareAndSet(slot, result, null)) {
+                size.decrementAndGet();
+                return result;
+            }
+        }
+        if (!overflow.isEmpty()) {
+            ProxyResult<?> result = overflow.remove(id);
+            if (result != null) {
+                size.decrementAndGet();
+                return result;
+            }
+        }
+        return null;
+    }
+
+    // remove and return every pending result
+    List<ProxyResult<?>> removeAll() {
+        List<ProxyResult<?>> removed = new ArrayList<ProxyResult<?>>();
+        for (int slot = 0; slot < slots.length(); slot++) {
+            ProxyResult<?> result = slots.getAndSet(slot, null);
+            if (result != null) {
+                size.decrementAndGet();
+                removed.add(result);
+            }
+        }
+        for (Long id : overflow.keySet()) {
+            ProxyResult<?> result = overflow.remove(id);
+            if (result != null) {
+                size.decrementAndGet();
+                removed.add(result);
+            }
+        }
+        return removed;
+    }
+
+    // number of messages currently waiting for a response
+    int size() {
+        return size.get();
+    }
+}
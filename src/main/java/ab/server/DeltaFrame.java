@@ -0,0 +1,120 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/* DeltaFrame ------------------------------------------------------------- */
+
+/**
+ * Persistent copy of the last frame received over the delta screenshot
+ * protocol. Each delta response carries only the tiles that changed since
+ * the frame the client last sent, and is patched into this buffer.
+ * 
+ * A response is laid out as (big-endian): long sequence, long base (the
+ * sequence it is a delta against, -1 for a key frame holding every tile),
+ * int width, int height, int tile size, int tile count, then per tile its
+ * column and row in tiles followed by its packed 0x00RRGGBB pixels. Tiles
+ * on the right and bottom edges are clipped to the frame.
+ */
+public class DeltaFrame {
+    public static final long NONE = -1;
+
+    private int[] pixels;
+    private int width, height;
+    private long sequence = NONE;
+
+    // the sequence a new delta request should be based on
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Patch the tiles of a delta response into the frame.
+     * 
+     * @return a copy of the updated frame
+     * @throws IllegalStateException if the delta is against a frame other
+     *         than the one held here, or is malformed (a tile outside the
+     *         frame, fewer bytes than announced); the frame is dropped and
+     *         the next request asks for a key frame
+     */
+    public synchronized BufferedImage apply(ByteBuffer data) {
+        if (data.remaining() < 32) {
+            throw fail("delta header of " + data.remaining() + " bytes");
+        }
+        final long seq = data.getLong();
+        final long base = data.getLong();
+        final int w = data.getInt();
+        final int h = data.getInt();
+        final int tile = data.getInt();
+        final int count = data.getInt();
+        if (w <= 0 || h <= 0 || (long) w * h > Integer.MAX_VALUE || tile <= 0) {
+            throw fail("bad delta frame " + w + "x" + h + " with tile size " + tile);
+        }
+        // every tile is at least its column, row and one pixel
+        if (count < 0 || 12L * count > data.remaining()) {
+            throw fail(count + " tiles in " + data.remaining() + " bytes");
+        }
+
+        if (base == NONE) {
+            if (pixels == null || w != width || h != height) {
+                pixels = new int[w * h];
+                width = w;
+                height = h;
+            }
+        } else if (base != sequence || w != width || h != height) {
+            throw fail("delta against frame " + base + " but holding frame " + sequence);
+        }
+
+        IntBuffer in = data.asIntBuffer();
+        for (int i = 0; i < count; i++) {
+            if (in.remaining() < 2) {
+                throw fail("tile " + i + " of " + count + " missing");
+            }
+            final int column = in.get();
+            final int row = in.get();
+            if (column < 0 || row < 0 || (long) column * tile >= width
+                    || (long) row * tile >= height) {
+                throw fail("tile " + column + "," + row + " outside the " + width + "x"
+                        + height + " frame");
+            }
+            final int x = column * tile;
+            final int y = row * tile;
+            final int tw = Math.min(tile, width - x);
+            final int th = Math.min(tile, height - y);
+            if (in.remaining() < tw * th) {
+                throw fail("tile " + column + "," + row + " truncated");
+            }
+            for (int r = 0; r < th; r++) {
+                in.get(pixels, (y + r) * width + x, tw);
+            }
+        }
+        sequence = seq;
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        System.arraycopy(pixels, 0, ((DataBufferInt) image.getRaster().getDataBuffer()).getData(),
+                0, pixels.length);
+        return image;
+    }
+
+    // drop the frame, it may be half patched, and describe why
+    private IllegalStateException fail(String message) {
+        sequence = NONE;
+        return new IllegalStateException(message);
+    }
+
+    // forget the frame, the next request asks for a key frame
+    public synchronized void reset() {
+        sequence = NONE;
+    }
+}
@@ -0,0 +1,136 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+import java.awt.image.BufferedImage;
+
+import ab.server.proxy.message.ProxyRawScreenshotMessage;
+
+/* FrameCache ------------------------------------------------------------- */
+
+/**
+ * Hands out the last screenshot again while the screen can't have changed
+ * underneath it: no input message has been sent since it was requested and
+ * it is younger than the time to live. The time to live covers everything
+ * that moves on its own (birds in flight, falling blocks, score counters).
+ * 
+ * Cached frames are shared between callers and must not be drawn on.
+ * Frames are decoded into images from the shared FramePool. Every frame
+ * handed out carries its own lease: give it back with FramePool.recycle()
+ * or Vision.release() when done, and the image is reused once the cache
+ * has moved on too. Frames that are never given back are garbage collected.
+ */
+public class FrameCache {
+    private static class Frame {
+        final BufferedImage image;
+        final long generation;
+        final long requestedAt;
+
+        Frame(BufferedImage image, long generation, long requestedAt) {
+            this.image = image;
+            this.generation = generation;
+            this.requestedAt = requestedAt;
+        }
+    }
+
+    private final ProxySession session;
+    private final FramePool pool = FramePool.getShared();
+    private volatile long timeToLive = 200;
+    private volatile Frame frame;
+
+    FrameCache(ProxySession session) {
+        this.session = session;
+    }
+
+    /**
+     * @return the cached frame if still valid, otherwise a new screenshot
+     *         (null if it could not be taken)
+     */
+    public BufferedImage getFrame() {
+        final long generation = session.getInputGeneration();
+        final long now = System.nanoTime();
+
+        BufferedImage cached = lease(generation, now);
+        if (cached != null) {
+            return cached;
+        }
+
+        // stamp the frame with the generation seen before asking for it, so
+        // input sent while the request is in flight invalidates it
+        BufferedImage image = session.send(new ProxyRawScreenshotMessage(pool));
+        if (image != null) {
+            // the image's first lease is the cache's, this one the caller's
+            FramePool.retain(image);
+            replace(new Frame(image, generation, now));
+        }
+        return image;
+    }
+
+    /**
+     * @return the cached frame if still valid, otherwise null; never sends
+     *         a request
+     */
+    public BufferedImage getCachedFrame() {
+        return lease(session.getInputGeneration(), System.nanoTime());
+    }
+
+    // a new lease on the cached frame if it is valid, otherwise null
+    private BufferedImage lease(long generation, long now) {
+        while (true) {
+            Frame f = frame;
+            if (!isValid(f, generation, now)) {
+                return null;
+            }
+            // fails if the frame was replaced and recycled meanwhile
+            if (FramePool.retain(f.image)) {
+                if (frame == f) {
+                    return f.image;
+                }
+                // replaced after the read: the image may have been recycled
+                // and acquired for another frame, whose lease this is
+                FramePool.recycle(f.image);
+                continue;
+            }
+            if (frame == f) {
+                // a caller recycled it more often than it was handed out
+                return null;
+            }
+        }
+    }
+
+    // swap in a new frame and give up the cache's lease on the old one
+    private synchronized void replace(Frame f) {
+        Frame old = frame;
+        frame = f;
+        if (old != null) {
+            FramePool.recycle(old.image);
+        }
+    }
+
+    private boolean isValid(Frame f, long generation, long now) {
+        return f != null && f.generation == generation
+                && now - f.requestedAt < timeToLive * 1000000L;
+    }
+
+    public void invalidate() {
+        replace(null);
+    }
+
+    /**
+     * @param timeToLive milliseconds a frame stays valid, 0 disables caching
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+}
@@ -0,0 +1,245 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+/* FramePool -------------------------------------------------------------- */
+
+/**
+ * Recycles screenshot images and decode buffers, so that polling the game
+ * at a high rate does not allocate a new 840x480 frame (1.6MB) and a new
+ * byte[] per screenshot.
+ * 
+ * Images handed out by a pool are tagged with it and may be given back with
+ * recycle(image) once nothing reads them any more (see Vision.release()).
+ * Images that are never given back are simply garbage collected, and
+ * recycling an image that did not come from a pool does nothing, so it is
+ * always safe to call. An image must not be used after it was recycled.
+ * 
+ * An image handed out has one lease. An image shared by several readers,
+ * such as a cached frame, gets another lease per reader with retain(image).
+ * It only goes back to the pool once every lease has been recycled.
+ */
+public class FramePool {
+    public static final int FRAME_WIDTH = 840;
+    public static final int FRAME_HEIGHT = 480;
+
+    // image property naming the pool an image belongs to
+    private static final String POOL_PROPERTY = "ab.server.FramePool";
+    // image property holding the number of leases, 0 while idle in the pool
+    private static final String LEASES_PROPERTY = "ab.server.FramePool.leases";
+
+    private static final FramePool shared = new FramePool(4);
+
+    private final int capacity;
+    private final ArrayDeque<BufferedImage> images = new ArrayDeque<BufferedImage>();
+    private final ArrayDeque<byte[]> buffers = new ArrayDeque<byte[]>();
+    private final ImageReader png;
+
+    /**
+     * @param capacity maximum number of idle images (and buffers) kept
+     */
+    public FramePool(int capacity) {
+        this.capacity = capacity;
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("png");
+        png = readers.hasNext() ? readers.next() : null;
+    }
+
+    // pool used by messages and callers that don't bring their own
+    public static FramePool getShared() {
+        return shared;
+    }
+
+    /**
+     * Take another lease on an image, to be given back with recycle(image).
+     * 
+     * @return false if the image was already given back to its pool, true
+     *         otherwise (including images that do not belong to a pool)
+     */
+    public static boolean retain(BufferedImage image) {
+        Object leases = image.getProperty(LEASES_PROPERTY);
+        if (!(leases instanceof AtomicInteger)) {
+            return true;
+        }
+        AtomicInteger count = (AtomicInteger) leases;
+        while (true) {
+            int n = count.get();
+            if (n <= 0) {
+                return false;
+            }
+            if (count.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Give a lease on an image back to the pool it came from.
+     * 
+     * @return false if the image does not belong to a pool
+     */
+    public static boolean recycle(BufferedImage image) {
+        if (image == null) {
+            return false;
+        }
+        Object pool = image.getProperty(POOL_PROPERTY);
+        return (pool instanceof FramePool) && ((FramePool) pool).release(image);
+    }
+
+    /**
+     * @return an idle image of the given size and BufferedImage type, or a
+     *         new one; its pixels are left as they were
+     */
+    public synchronized BufferedImage acquire(int width, int height, int type) {
+        for (Iterator<BufferedImage> i = images.iterator(); i.hasNext();) {
+            BufferedImage image = i.next();
+            if (image.getWidth() == width && image.getHeight() == height
+                    && image.getType() == type) {
+                i.remove();
+                leases(image).set(1);
+                return image;
+            }
+        }
+        return create(width, height, type);
+    }
+
+    /**
+     * Give back one lease; the image becomes idle when the last one is.
+     * 
+     * @return false if the image does not belong to this pool
+     */
+    public synchronized boolean release(BufferedImage image) {
+        if (image.getProperty(POOL_PROPERTY) != this) {
+            return false;
+        }
+        AtomicInteger count = leases(image);
+        int n;
+        do {
+            n = count.get();
+            if (n <= 0) {
+                // released more often than leased
+                return true;
+            }
+        } while (!count.compareAndSet(n, n - 1));
+        if (n > 1) {
+            // still read elsewhere
+            return true;
+        }
+        if (images.size() == capacity) {
+            images.removeLast();
+        }
+        images.addFirst(image);
+        return true;
+    }
+
+    /**
+     * @return a buffer of at least length bytes, to be given back with
+     *         release(byte[]) when done
+     */
+    public synchronized byte[] acquireBuffer(int length) {
+        for (Iterator<byte[]> i = buffers.iterator(); i.hasNext();) {
+            byte[] buffer = i.next();
+            if (buffer.length >= length) {
+                i.remove();
+                return buffer;
+            }
+        }
+        // grow in steps so a slowly growing frame size doesn't reallocate
+        // every time
+        return new byte[Math.max(length + (length >> 3), 4096)];
+    }
+
+    public synchronized void release(byte[] buffer) {
+        if (buffers.size() == capacity) {
+            // keep the larger buffers
+            byte[] smallest = buffers.peekFirst();
+            for (byte[] b : buffers) {
+                if (b.length < smallest.length) {
+                    smallest = b;
+                }
+            }
+            if (smallest.length >= buffer.length) {
+                return;
+            }
+            buffers.remove(smallest);
+        }
+        buffers.addLast(buffer);
+    }
+
+    /**
+     * Decode a PNG into an image from this pool, reading straight into its
+     * raster instead of letting ImageIO allocate one.
+     * 
+     * @throws IOException if data is not a readable PNG
+     */
+    public BufferedImage decodePng(byte[] data, int offset, int length) throws IOException {
+        if (png == null) {
+            return ImageIO.read(new ByteArrayInputStream(data, offset, length));
+        }
+        synchronized (png) {
+            ImageInputStream in = new MemoryCacheImageInputStream(
+                    new ByteArrayInputStream(data, offset, length));
+            try {
+                png.setInput(in, true, true);
+                // the type ImageIO.read would produce, e.g. 3BYTE_BGR for
+                // RGB and 4BYTE_ABGR for RGBA frames
+                ImageTypeSpecifier spec = png.getImageTypes(0).next();
+                if (spec.getBufferedImageType() == BufferedImage.TYPE_CUSTOM) {
+                    return png.read(0);
+                }
+                BufferedImage image = acquire(png.getWidth(0), png.getHeight(0),
+                        spec.getBufferedImageType());
+                ImageReadParam param = png.getDefaultReadParam();
+                param.setDestination(image);
+                try {
+                    return png.read(0, param);
+                } catch (IOException e) {
+                    release(image);
+                    throw e;
+                }
+            } finally {
+                png.setInput(null);
+                in.close();
+            }
+        }
+    }
+
+    // a standard image tagged as belonging to this pool
+    private BufferedImage create(int width, int height, int type) {
+        ImageTypeSpecifier spec = ImageTypeSpecifier.createFromBufferedImageType(type);
+        ColorModel cm = spec.getColorModel();
+        WritableRaster raster = Raster.createWritableRaster(spec.getSampleModel(width, height), null);
+        Hashtable<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(POOL_PROPERTY, this);
+        properties.put(LEASES_PROPERTY, new AtomicInteger(1));
+        return new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), properties);
+    }
+
+    private static AtomicInteger leases(BufferedImage image) {
+        return (AtomicInteger) image.getProperty(LEASES_PROPERTY);
+    }
+}
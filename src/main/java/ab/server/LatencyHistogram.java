@@ -0,0 +1,103 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* LatencyHistogram ------------------------------------------------------- */
+
+/**
+ * Fixed-size, thread-safe histogram of durations in microseconds.
+ * 
+ * Each power of two is split into 8 linear buckets, so any recorded value
+ * is reported within 12.5% of its true value, from 1us up to about 12 days,
+ * in a few KB no matter how many values are recorded.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+
+    private final AtomicLongArray buckets =
+            new AtomicLongArray((MAX_EXPONENT - SUB_BITS + 2) * SUB);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        final long micros = Math.max(nanos / 1000, 0);
+        buckets.incrementAndGet(bucket(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+
+        long m = max.get();
+        while (micros > m && !max.compareAndSet(m, micros)) {
+            m = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        final long n = count.get();
+        return (n == 0) ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return upper bound in microseconds of the bucket holding the given
+     *         percentile, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        final long target = (long) Math.ceil(percentile / 100 * count.get());
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= target && seen > 0) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    private static int bucket(long micros) {
+        if (micros < SUB) {
+            return (int) micros;
+        }
+        final int e = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+        final int sub = (int) (micros >>> (e - SUB_BITS)) & (SUB - 1);
+        return (e - SUB_BITS + 1) * SUB + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB) {
+            return bucket;
+        }
+        final int e = bucket / SUB + SUB_BITS - 1;
+        final long lower = (long) (SUB + bucket % SUB) << (e - SUB_BITS);
+        return lower + (1L << (e - SUB_BITS)) - 1;
+    }
+}
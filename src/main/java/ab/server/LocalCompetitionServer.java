@@ -0,0 +1,348 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+import java.awt.image.BufferedImage;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import external.ClientMessageEncoder;
+import external.ClientMessageTable;
+
+/* LocalCompetitionServer ------------------------------------------------- */
+
+/**
+ * Stand-in for the competition server on port 2004, for testing and load
+ * testing ClientActionRobot without the real game. Every opcode of
+ * ClientMessageTable is answered:
+ * 
+ * - doScreenShot gets the next frame of a recording (wrapping around at the
+ *   end), as 4-byte width, 4-byte height and 3 bytes RGB per pixel
+ * - configure gets round 1, a 30 minute time limit and the number of levels
+ * - getState is PLAYING once a level was loaded, LEVEL_SELECTION before
+ * - getCurrentLevel is the last level loaded
+ * - getMyScore and getBestScores are one 4-byte score per level, see
+ *   setScore
+ * - every shot is acknowledged with 1, a sequence with one 1 per shot (see
+ *   ClientMessageEncoder.shotReplyLength)
+ * - loadLevel, restartLevel, zooming and clicking are acknowledged with 1
+ * 
+ * Each reply can be held back by a per-opcode latency. Every connection is
+ * served by its own thread and plays back the recording independently.
+ * The server listens on a TCP port or on a Unix domain socket.
+ */
+public class LocalCompetitionServer {
+    public static final int LEVELS = 21;
+
+    // GameStateExtractor.GameState ordinals, as sent by getState
+    private static final byte LEVEL_SELECTION = 3;
+    private static final byte PLAYING = 5;
+
+    // longest request and reply: the longest shot sequence
+    private static final int MAX_REQUEST =
+            ClientMessageEncoder.shotSequenceLength(ClientMessageEncoder.MAX_SEQUENCE);
+    private static final int MAX_REPLY = Math.max(4 * LEVELS,
+            ClientMessageEncoder.shotReplyLength(ClientMessageEncoder.MAX_SEQUENCE));
+
+    // frames with their width/height header, ready to be written
+    private final ByteBuffer[] frames;
+    // reply latency in milliseconds by opcode
+    private final long[] latency = new long[64];
+    private final int[] scores = new int[LEVELS];
+    private final AtomicLong served = new AtomicLong();
+    // listening sockets, TCP and Unix domain
+    private final List<ServerSocketChannel> listeners =
+            new CopyOnWriteArrayList<ServerSocketChannel>();
+
+    public LocalCompetitionServer(List<BufferedImage> frames) {
+        if (frames.isEmpty()) {
+            throw new IllegalArgumentException("no frames to serve");
+        }
+        this.frames = new ByteBuffer[frames.size()];
+        for (int i = 0; i < this.frames.length; i++) {
+            this.frames[i] = encode(frames.get(i));
+        }
+    }
+
+    private static ByteBuffer encode(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+        ByteBuffer b = ByteBuffer.allocateDirect(8 + 3 * pixels.length);
+        b.putInt(width).putInt(height);
+        for (int rgb : pixels) {
+            b.put((byte) (rgb >> 16)).put((byte) (rgb >> 8)).put((byte) rgb);
+        }
+        b.flip();
+        return b.asReadOnlyBuffer();
+    }
+
+    /**
+     * Hold back every reply to the given message by millis milliseconds.
+     */
+    public void setLatency(ClientMessageTable message, long millis) {
+        latency[ClientMessageTable.getValue(message)] = millis;
+    }
+
+    // as setLatency(message, millis), for every message
+    public void setLatency(long millis) {
+        Arrays.fill(latency, millis);
+    }
+
+    // score reported for a level (1 based) by getMyScore and getBestScores
+    public synchronized void setScore(int level, int score) {
+        scores[level - 1] = score;
+    }
+
+    // number of requests answered so far
+    public long getServedCount() {
+        return served.get();
+    }
+
+    /**
+     * Accept connections on the given port until stop() is called. Returns
+     * once the port is bound. A server may listen on several ports and
+     * sockets at once.
+     */
+    public void start(int port) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        startAccepting(server, "competition-server-" + port);
+    }
+
+    /**
+     * Accept connections on a Unix domain socket at the given path (a stale
+     * socket file there is replaced) until stop() is called.
+     */
+    public void start(Path socket) throws IOException {
+        Files.deleteIfExists(socket);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        startAccepting(server, "competition-server-" + socket.getFileName());
+    }
+
+    private void startAccepting(final ServerSocketChannel server, String name) {
+        listeners.add(server);
+        Thread acceptor = new Thread(name) {
+            @Override
+            public void run() {
+                accept(server);
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public void stop() throws IOException {
+        for (ServerSocketChannel server : listeners) {
+            SocketAddress address = server.getLocalAddress();
+            server.close();
+            if (address instanceof UnixDomainSocketAddress) {
+                Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            }
+        }
+        listeners.clear();
+    }
+
+    private void accept(ServerSocketChannel server) {
+        try {
+            while (true) {
+                SocketChannel channel = server.accept();
+                if (channel.getLocalAddress() instanceof InetSocketAddress) {
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                serve(channel);
+            }
+        } catch (ClosedChannelException e) {
+            // stopped
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Answer requests on the given channel on a new thread until the client
+     * disconnects.
+     */
+    public void serve(final ByteChannel channel) {
+        Thread t = new Thread("competition-client") {
+            @Override
+            public void run() {
+                try {
+                    new Connection(channel).run();
+                } catch (EOFException e) {
+                    // client went away
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                    }
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // one client: its own buffers, current level and place in the recording
+    private class Connection {
+        private final ByteChannel channel;
+        private final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST);
+        private final ByteBuffer reply = ByteBuffer.allocate(MAX_REPLY);
+        private int level = 0;
+        private int next = 0;
+
+        Connection(ByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void run() throws IOException {
+            while (true) {
+                final byte code = read(1).get();
+                ClientMessageTable message = ClientMessageTable.getValue(code);
+                if (message == null) {
+                    throw new IOException("unknown opcode " + code);
+                }
+
+                reply.clear();
+                ByteBuffer out = reply;
+                switch (message) {
+                case configure:
+                    read(4);
+                    reply.put((byte) 1).put((byte) 30).put((byte) LEVELS).put((byte) 0);
+                    break;
+                case doScreenShot:
+                    out = frames[next].duplicate();
+                    next = (next + 1) % frames.length;
+                    break;
+                case loadLevel:
+                    // 0 loads the level after the current one
+                    final int requested = read(1).get();
+                    level = (requested > 0) ? requested : Math.min(level + 1, LEVELS);
+                    reply.put((byte) 1);
+                    break;
+                case cshoot:
+                case pshoot:
+                case cFastshoot:
+                case pFastshoot:
+                    read(ClientMessageEncoder.SHOT_LENGTH - 1);
+                    for (int i = 0; i < ClientMessageEncoder.shotReplyLength(1); i++) {
+                        reply.put((byte) 1);
+                    }
+                    break;
+                case shootSeq:
+                case shootSeqFast:
+                    final int shots = read(1).get() & 0xff;
+                    read(shots * ClientMessageEncoder.SHOT_LENGTH);
+                    for (int i = 0; i < ClientMessageEncoder.shotReplyLength(shots); i++) {
+                        reply.put((byte) 1);
+                    }
+                    break;
+                case getState:
+                    reply.put(level == 0 ? LEVEL_SELECTION : PLAYING);
+                    break;
+                case getCurrentLevel:
+                    reply.put((byte) level);
+                    break;
+                case getMyScore:
+                case getBestScores:
+                    synchronized (LocalCompetitionServer.this) {
+                        for (int score : scores) {
+                            reply.putInt(score);
+                        }
+                    }
+                    break;
+                case restartLevel:
+                case fullyZoomOut:
+                case fullyZoomIn:
+                case clickInCentre:
+                    reply.put((byte) 1);
+                    break;
+                }
+                if (out == reply) {
+                    reply.flip();
+                }
+
+                final long delay = latency[code];
+                if (delay > 0) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                served.incrementAndGet();
+            }
+        }
+
+        // read the next length bytes of the request
+        private ByteBuffer read(int length) throws IOException {
+            request.clear();
+            request.limit(length);
+            while (request.hasRemaining()) {
+                if (channel.read(request) < 0) {
+                    throw new EOFException();
+                }
+            }
+            request.flip();
+            return request;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("USAGE: java LocalCompetitionServer <directory> [<port> | unix:<path> [<latency ms>]]");
+            System.exit(1);
+        }
+
+        List<BufferedImage> frames = ReplayGameClient.loadFrames(new File(args[0]));
+        String address = (args.length > 1) ? args[1] : "2004";
+        LocalCompetitionServer server = new LocalCompetitionServer(frames);
+        server.setLatency((args.length > 2) ? Long.parseLong(args[2]) : 0);
+        if (address.startsWith("unix:")) {
+            server.start(Paths.get(address.substring("unix:".length())));
+        } else {
+            server.start(Integer.parseInt(address));
+        }
+
+        System.out.println("Serving " + frames.size() + " frames on " + address);
+        long last = 0;
+        while (true) {
+            Thread.sleep(1000);
+            long served = server.getServedCount();
+            System.out.println((served - last) + " requests/s");
+            last = served;
+        }
+    }
+}
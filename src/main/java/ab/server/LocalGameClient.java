@@ -0,0 +1,260 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.codec.binary.Base64;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+/* LocalGameClient -------------------------------------------------------- */
+
+/**
+ * Headless stand-in for the browser plugin. Connects to a Proxy, answers
+ * screenshot requests with the current frame and acknowledges every other
+ * command, so the Proxy stack can be exercised without a live game.
+ */
+public class LocalGameClient extends WebSocketClient {
+    private volatile BufferedImage frame;
+
+    // the last frame sent over the delta protocol
+    private int[] deltaPixels;
+    private long deltaSequence = DeltaFrame.NONE;
+
+    public LocalGameClient(URI serverUri) {
+        super(serverUri);
+    }
+
+    public LocalGameClient(int port) {
+        this(URI.create("ws://localhost:" + port));
+    }
+
+    // set the frame returned by subsequent screenshot requests
+    public void setFrame(BufferedImage frame) {
+        this.frame = frame;
+    }
+
+    // the frame to answer the next screenshot request with
+    protected BufferedImage nextFrame() {
+        return frame;
+    }
+
+    @Override
+    public void onOpen(ServerHandshake handshake) { }
+
+    @Override
+    public void onClose(int code, String reason, boolean remote) { }
+
+    @Override
+    public void onError(Exception ex) {
+        ex.printStackTrace();
+    }
+
+    @Override
+    public void onMessage(String message) {
+        JSONArray j = (JSONArray) JSONValue.parse(message);
+        long id = (Long) j.get(0);
+        String name = (String) j.get(1);
+        JSONObject data = (JSONObject) j.get(2);
+
+        try {
+            if (name.equals("screenshot")) {
+                sendScreenshot(id, data);
+            } else if (name.equals("batch")) {
+                playBatch((JSONArray) data.get("commands"));
+                sendResponse(id, new JSONObject());
+            } else {
+                sendResponse(id, new JSONObject());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // honour the per-command delays; the commands themselves have no effect
+    private void playBatch(JSONArray commands) {
+        for (Object command : commands) {
+            Long delay = (Long) ((JSONObject) command).get("delay");
+            if (delay != null) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void sendScreenshot(long id, JSONObject data) throws IOException {
+        if (Boolean.TRUE.equals(data.get("binary")) && "delta".equals(data.get("format"))) {
+            sendDelta(id, ((Long) data.get("tile")).intValue(), (Long) data.get("base"));
+            return;
+        }
+        if (Boolean.TRUE.equals(data.get("binary")) && "regions".equals(data.get("format"))) {
+            sendRegions(id, (JSONArray) data.get("regions"));
+            return;
+        }
+        if (Boolean.TRUE.equals(data.get("binary")) && "raw".equals(data.get("format"))) {
+            sendRawScreenshot(id);
+            return;
+        }
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(nextFrame(), "png", png);
+        byte[] imageBytes = png.toByteArray();
+
+        if (Boolean.TRUE.equals(data.get("binary"))) {
+            ByteBuffer b = ByteBuffer.allocate(8 + imageBytes.length);
+            b.putLong(id);
+            b.put(imageBytes);
+            send(b.array());
+        } else {
+            sendResponse(id, dataUrl(imageBytes));
+        }
+    }
+
+    private void sendRawScreenshot(long id) {
+        BufferedImage image = nextFrame();
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] &= 0x00ffffff;
+        }
+
+        ByteBuffer b = ByteBuffer.allocate(16 + 4 * pixels.length);
+        b.putLong(id);
+        b.putInt(width);
+        b.putInt(height);
+        b.asIntBuffer().put(pixels);
+        send(b.array());
+    }
+
+    private void sendRegions(long id, JSONArray regions) {
+        BufferedImage image = nextFrame();
+        int size = 20;
+        for (Object o : regions) {
+            JSONArray r = (JSONArray) o;
+            size += 16 + 4 * ((Long) r.get(2)).intValue() * ((Long) r.get(3)).intValue();
+        }
+
+        ByteBuffer b = ByteBuffer.allocate(size);
+        b.putLong(id);
+        b.putInt(image.getWidth());
+        b.putInt(image.getHeight());
+        b.putInt(regions.size());
+        for (Object o : regions) {
+            JSONArray r = (JSONArray) o;
+            final int x = ((Long) r.get(0)).intValue();
+            final int y = ((Long) r.get(1)).intValue();
+            final int w = ((Long) r.get(2)).intValue();
+            final int h = ((Long) r.get(3)).intValue();
+            b.putInt(x);
+            b.putInt(y);
+            b.putInt(w);
+            b.putInt(h);
+            for (int pixel : image.getRGB(x, y, w, h, null, 0, w)) {
+                b.putInt(pixel & 0x00ffffff);
+            }
+        }
+        send(b.array());
+    }
+
+    // send the tiles that differ from the frame the server holds, or all of
+    // them if it holds a different one
+    private void sendDelta(long id, int tile, long base) {
+        BufferedImage image = nextFrame();
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] &= 0x00ffffff;
+        }
+
+        final boolean key = (base == DeltaFrame.NONE || base != deltaSequence
+                || deltaPixels == null || deltaPixels.length != pixels.length);
+        final int cols = (width + tile - 1) / tile;
+        final int rows = (height + tile - 1) / tile;
+
+        ByteBuffer b = ByteBuffer.allocate(48 + 4 * (2 * cols * rows + pixels.length));
+        b.putLong(id);
+        b.putLong(deltaSequence + 1);
+        b.putLong(key ? DeltaFrame.NONE : base);
+        b.putInt(width);
+        b.putInt(height);
+        b.putInt(tile);
+        final int countAt = b.position();
+        b.putInt(0);
+
+        int count = 0;
+        for (int ty = 0; ty < rows; ty++) {
+            for (int tx = 0; tx < cols; tx++) {
+                final int x = tx * tile;
+                final int y = ty * tile;
+                final int tw = Math.min(tile, width - x);
+                final int th = Math.min(tile, height - y);
+                if (!key && !tileChanged(pixels, width, x, y, tw, th)) {
+                    continue;
+                }
+                b.putInt(tx);
+                b.putInt(ty);
+                for (int row = 0; row < th; row++) {
+                    b.asIntBuffer().put(pixels, (y + row) * width + x, tw);
+                    b.position(b.position() + 4 * tw);
+                }
+                count++;
+            }
+        }
+        b.putInt(countAt, count);
+
+        deltaPixels = pixels;
+        deltaSequence++;
+        send(Arrays.copyOf(b.array(), b.position()));
+    }
+
+    private boolean tileChanged(int[] pixels, int width, int x, int y, int tw, int th) {
+        for (int row = 0; row < th; row++) {
+            final int offset = (y + row) * width + x;
+            for (int i = offset; i < offset + tw; i++) {
+                if (pixels[i] != deltaPixels[i]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONObject dataUrl(byte[] imageBytes) {
+        JSONObject o = new JSONObject();
+        o.put("data", "data:image/png;base64," + Base64.encodeBase64String(imageBytes));
+        return o;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void sendResponse(long id, JSONObject data) {
+        JSONArray a = new JSONArray();
+        a.add(id);
+        a.add(data);
+        send(a.toJSONString());
+    }
+}
@@ -9,64 +9,85 @@
 
 package ab.server;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.util.HashMap;
-import java.util.concurrent.SynchronousQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.java_websocket.WebSocket;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.server.WebSocketServer;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.JSONValue;
 
 /* Proxy ------------------------------------------------------------------ */
 
-public class Proxy extends WebSocketServer {
-    private Long id = 0L;
-    private HashMap<Long, ProxyResult<?>> results = new HashMap<Long, ProxyResult<?>>();
-    
-    private class ProxyResult<T> {
-        public ProxyMessage<T> message;
-        public SynchronousQueue<Object> queue = new SynchronousQueue<Object>();
-    }
-	
+public class Proxy extends WebSocketServer implements ProxyEndpoint {
+    // one session per connected game, in the order they connected
+    private final ConcurrentHashMap<WebSocket, ProxySession> sessions =
+            new ConcurrentHashMap<WebSocket, ProxySession>();
+    private final CopyOnWriteArrayList<ProxySession> ordered =
+            new CopyOnWriteArrayList<ProxySession>();
+
+    // milliseconds to wait for a response, <= 0 waits forever
+    private volatile long defaultTimeout = 10000;
+    // how often an expired message is resent, by message name
+    private final ConcurrentHashMap<String, Integer> retryBudgets =
+            new ConcurrentHashMap<String, Integer>();
+    private final ProxyMetrics metrics = new ProxyMetrics(this);
+
     public Proxy(int port) throws UnknownHostException {
-        super(new InetSocketAddress(port));
+        this(new InetSocketAddress(port));
     }
 
     public Proxy(InetSocketAddress address) {
         super(address);
+        // screenshots have no side effects, so they are safe to resend
+        setRetryBudget("screenshot", 2);
+        metrics.register(address.getPort());
+    }
+
+    @Override
+    public void stop(int timeout) throws IOException, InterruptedException {
+        metrics.unregister();
+        super.stop(timeout);
     }
 
     @Override
     public void onOpen(WebSocket conn, ClientHandshake handshake) {
     	//System.out.println(conn.getRemoteSocketAddress().toString());
+        ProxySession session = new ProxySession(this, conn);
+        sessions.put(conn, session);
+        ordered.add(session);
     	onOpen();
     }
 
     @Override
     public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        ProxySession session = sessions.remove(conn);
+        if (session != null) {
+            ordered.remove(session);
+            session.close();
+        }
         onClose();
     }
 
     @Override
     public void onMessage(WebSocket conn, String message) {
-        JSONArray j = (JSONArray) JSONValue.parse(message);
-        Long id = (Long) j.get(0);
-        JSONObject data = (JSONObject) j.get(1);
-      
-        ProxyResult<?> result = results.get(id);
-	
-        if (result != null) {
-            results.remove(id);
-            try {
-                result.queue.put(result.message.gotResponse(data));
-            } catch (InterruptedException e) {
-              
-                e.printStackTrace();
-            }
+        ProxySession session = sessions.get(conn);
+        if (session != null) {
+            session.onMessage(message);
+        }
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        ProxySession session = sessions.get(conn);
+        if (session != null) {
+            session.onMessage(message);
         }
     }
 
@@ -74,36 +95,138 @@ public class Proxy extends WebSocketServer {
     public void onError(WebSocket conn, Exception ex) {
         ex.printStackTrace();
     }
-    
-    @SuppressWarnings("unchecked")
-    public synchronized <T> T send(ProxyMessage<T> message) {
-    	//Long t1 = System.nanoTime();
-        JSONArray a = new JSONArray();
-        a.add(id);
-        a.add(message.getMessageName());
-        a.add(message.getJSON());
-        
-        ProxyResult<T> result = new ProxyResult<T>();
-        result.message = message;
-        results.put(id, result);
-
-        for (WebSocket conn : connections()) {	
-            conn.send(a.toJSONString());
-        }
-       
-
-    	
-        id++;
-	
-        try {
-        	
-            return (T)result.queue.take();
-        } catch (InterruptedException e) {
-        
-            e.printStackTrace();
+
+    /**
+     * The session for one connected game. Agents that share a Proxy should
+     * each bind to their own session rather than use the Proxy directly.
+     * 
+     * @return the session, or null if conn is not connected
+     */
+    public ProxySession getSession(WebSocket conn) {
+        return sessions.get(conn);
+    }
+
+    // connected sessions, oldest first
+    public List<ProxySession> getSessions() {
+        return new ArrayList<ProxySession>(ordered);
+    }
+
+    // the oldest session still open, used by the ProxyEndpoint methods below
+    private ProxySession defaultSession() {
+        for (ProxySession session : ordered) {
+            if (session.isOpen()) {
+                return session;
+            }
         }
         return null;
     }
+
+    /**
+     * Send a message to the oldest connected game and block until its
+     * response arrives or the default timeout (including retries) runs out.
+     * 
+     * @return the decoded response, or null if no game is connected, the
+     *         wait was interrupted, timed out or the response could not be
+     *         decoded
+     * @see ProxySession#send(ProxyMessage)
+     */
+    @Override
+    public <T> T send(ProxyMessage<T> message) {
+        return send(message, defaultTimeout);
+    }
+
+    /**
+     * As send(message), waiting at most timeout milliseconds per attempt.
+     */
+    @Override
+    public <T> T send(ProxyMessage<T> message, long timeout) {
+        ProxySession session = defaultSession();
+        if (session == null) {
+            new IllegalStateException("no client connected").printStackTrace();
+            return null;
+        }
+        return session.send(message, timeout);
+    }
+
+    /**
+     * Send a message to the oldest connected game without waiting for its
+     * response.
+     * 
+     * @return a future completed with the decoded response
+     * @see ProxySession#sendAsync(ProxyMessage)
+     */
+    @Override
+    public <T> CompletableFuture<T> sendAsync(ProxyMessage<T> message) {
+        return sendAsync(message, defaultTimeout);
+    }
+
+    /**
+     * As sendAsync(message), expiring after timeout milliseconds per
+     * attempt (<= 0 waits forever).
+     * 
+     * @return a future completed with the decoded response, or failed with
+     *         an IllegalStateException if no game is connected
+     */
+    @Override
+    public <T> CompletableFuture<T> sendAsync(ProxyMessage<T> message, long timeout) {
+        ProxySession session = defaultSession();
+        if (session == null) {
+            CompletableFuture<T> future = new CompletableFuture<T>();
+            future.completeExceptionally(new IllegalStateException("no client connected"));
+            return future;
+        }
+        return session.sendAsync(message, timeout);
+    }
+
+    /**
+     * Set the timeout used by send(message) and sendAsync(message).
+     * 
+     * @param timeout milliseconds per attempt, <= 0 to wait forever
+     */
+    public void setDefaultTimeout(long timeout) {
+        defaultTimeout = timeout;
+    }
+
+    public long getDefaultTimeout() {
+        return defaultTimeout;
+    }
+
+    /**
+     * Set how many times an expired message of the given type is resent
+     * before its future fails. Only messages whose effect is harmless to
+     * repeat should get a budget; by default only screenshots are retried.
+     */
+    public void setRetryBudget(String messageName, int retries) {
+        retryBudgets.put(messageName, retries);
+    }
+
+    int getRetryBudget(String messageName) {
+        Integer retries = retryBudgets.get(messageName);
+        return retries == null ? 0 : retries;
+    }
+
+    // number of requests (including retries) that expired without a response
+    public long getExpiredCount() {
+        return metrics.getExpiredRequests();
+    }
+
+    public ProxyMetrics getMetrics() {
+        return metrics;
+    }
+
+    // screenshot cache of the oldest connected game, null if none
+    @Override
+    public FrameCache getFrameCache() {
+        ProxySession session = defaultSession();
+        return session == null ? null : session.getFrameCache();
+    }
+
+    // delta reconstruction buffer of the oldest connected game, null if none
+    @Override
+    public DeltaFrame getDeltaFrame() {
+        ProxySession session = defaultSession();
+        return session == null ? null : session.getDeltaFrame();
+    }
     
     public void onOpen() { }
     
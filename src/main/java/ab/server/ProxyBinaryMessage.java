@@ -0,0 +1,19 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+import java.nio.ByteBuffer;
+
+// a message whose response may arrive as a binary frame instead of JSON.
+// Binary frames start with the 8 byte big-endian message id; data holds
+// everything after it.
+public interface ProxyBinaryMessage<T> extends ProxyMessage<T> {
+    public T gotResponse(ByteBuffer data);
+}
@@ -0,0 +1,319 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+/* ProxyCodec ------------------------------------------------------------- */
+
+/**
+ * Reads and writes the proxy envelope without going through json-simple's
+ * tree model. Requests are [id, name, payload] and JSON responses are
+ * [id, payload].
+ * 
+ * Responses are scanned in place: the id is read straight from the text,
+ * and a data URL in the payload is returned as a CharSequence view of the
+ * received string, so a screenshot is never copied into intermediate
+ * Strings. Only small payloads are still parsed into a JSONObject.
+ */
+public final class ProxyCodec {
+    private static final byte[] BASE64 = new byte[128];
+    static {
+        Arrays.fill(BASE64, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64[alphabet.charAt(i)] = (byte) i;
+        }
+        // URL-safe variants decode to the same values
+        BASE64['-'] = 62;
+        BASE64['_'] = 63;
+    }
+
+    // reused by encode, a request is built and sent on the same thread
+    private static final ThreadLocal<StringBuilder> builders = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    private ProxyCodec() {
+    }
+
+    /**
+     * @return the request envelope [id,"name",payload]
+     */
+    public static String encode(long id, String name, JSONObject payload) {
+        StringBuilder sb = builders.get();
+        sb.setLength(0);
+        sb.append('[').append(id).append(",\"");
+        sb.append(JSONValue.escape(name)).append("\",");
+        sb.append(payload == null ? "null" : payload.toJSONString());
+        sb.append(']');
+        return sb.toString();
+    }
+
+    /**
+     * @return the id of a response envelope
+     * @throws IllegalArgumentException if the message does not start with
+     *         [id,
+     */
+    public static long readId(CharSequence message) {
+        final int length = message.length();
+        int i = skipSpace(message, 0, length);
+        if (i == length || message.charAt(i) != '[') {
+            throw new IllegalArgumentException("not a proxy envelope");
+        }
+        i = skipSpace(message, i + 1, length);
+
+        long id = 0;
+        int digits = 0;
+        for (; i < length; i++, digits++) {
+            char c = message.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            id = id * 10 + (c - '0');
+        }
+        if (digits == 0) {
+            throw new IllegalArgumentException("proxy envelope without id");
+        }
+        return id;
+    }
+
+    /**
+     * @return the index of the first character of the payload of a response
+     *         envelope, i.e. after the comma following the id
+     */
+    public static int payloadStart(CharSequence message) {
+        final int length = message.length();
+        for (int i = 0; i < length; i++) {
+            if (message.charAt(i) == ',') {
+                return skipSpace(message, i + 1, length);
+            }
+        }
+        throw new IllegalArgumentException("proxy envelope without payload");
+    }
+
+    /**
+     * @return the index just past the last character of the payload of a
+     *         response envelope, i.e. before the closing bracket
+     */
+    public static int payloadEnd(CharSequence message) {
+        int i = message.length() - 1;
+        while (i >= 0 && Character.isWhitespace(message.charAt(i))) {
+            i--;
+        }
+        if (i < 0 || message.charAt(i) != ']') {
+            throw new IllegalArgumentException("unterminated proxy envelope");
+        }
+        i--;
+        while (i >= 0 && Character.isWhitespace(message.charAt(i))) {
+            i--;
+        }
+        return i + 1;
+    }
+
+    /**
+     * Parse the payload between from and to into a JSONObject. Empty
+     * objects, the usual acknowledgement, are not handed to the parser.
+     */
+    public static JSONObject parseObject(String message, int from, int to) {
+        if (to - from == 2 && message.charAt(from) == '{' && message.charAt(from + 1) == '}') {
+            return new JSONObject();
+        }
+        return (JSONObject) JSONValue.parse(message.substring(from, to));
+    }
+
+    /**
+     * Find the string value of a top level key of the JSON object between
+     * from and to.
+     * 
+     * @return the index of the value's opening quote, or -1 if the key is
+     *         missing or its value is not a string
+     */
+    public static int findString(CharSequence message, int from, int to, String key) {
+        int depth = 0;
+        int i = from;
+        while (i < to) {
+            char c = message.charAt(i);
+            if (c == '"') {
+                int end = skipString(message, i, to);
+                if (depth == 1 && matches(message, i + 1, end, key)) {
+                    int j = skipSpace(message, end + 1, to);
+                    // only keys are followed by a colon
+                    if (j < to && message.charAt(j) == ':') {
+                        j = skipSpace(message, j + 1, to);
+                        return (j < to && message.charAt(j) == '"') ? j : -1;
+                    }
+                }
+                i = end + 1;
+            } else {
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the base64 text of the data URL in the "data" field of the
+     *         payload between from and to, as a view of message, or null if
+     *         there is none
+     */
+    public static CharSequence dataUrl(CharSequence message, int from, int to) {
+        int start = findString(message, from, to, "data");
+        if (start < 0) {
+            return null;
+        }
+        int end = skipString(message, start, to);
+        for (int i = start + 1; i < end; i++) {
+            if (message.charAt(i) == ',') {
+                return CharBuffer.wrap(message, i + 1, end);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the base64 text after the comma of a data URL, as a view of
+     *         url
+     */
+    public static CharSequence dataUrl(String url) {
+        int comma = url.indexOf(',');
+        if (comma < 0) {
+            throw new IllegalArgumentException("not a data URL");
+        }
+        return CharBuffer.wrap(url, comma + 1, url.length());
+    }
+
+    /**
+     * @return the number of bytes text takes as UTF-8, as a WebSocket text
+     *         frame carries it, without encoding it
+     */
+    public static int utf8Length(CharSequence text) {
+        final int length = text.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x800) {
+                if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    // a pair of chars, 4 bytes
+                    i++;
+                }
+                bytes += 2;
+            } else if (c >= 0x80) {
+                bytes += 1;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the number of bytes base64 decodes to
+     */
+    public static int decodedLength(CharSequence base64) {
+        int symbols = 0;
+        final int length = base64.length();
+        for (int i = 0; i < length; i++) {
+            char c = base64.charAt(i);
+            if (c == '=') {
+                break;
+            }
+            if (c < 128 && BASE64[c] >= 0) {
+                symbols++;
+            }
+        }
+        return symbols / 4 * 3 + Math.max(symbols % 4 - 1, 0);
+    }
+
+    /**
+     * Decode base64 into dst, skipping characters outside the alphabet
+     * (line breaks, and the backslash of a JSON-escaped "\/"), and stopping
+     * at the first padding character.
+     * 
+     * @return the number of bytes written
+     * @throws IndexOutOfBoundsException if dst is too small, see
+     *         decodedLength
+     */
+    public static int decodeBase64(CharSequence base64, byte[] dst, int offset) {
+        final int length = base64.length();
+        int out = offset;
+        int bits = 0;
+        int buffered = 0;
+        for (int i = 0; i < length; i++) {
+            char c = base64.charAt(i);
+            if (c == '=') {
+                break;
+            }
+            int value = (c < 128) ? BASE64[c] : -1;
+            if (value < 0) {
+                continue;
+            }
+            bits = (bits << 6) | value;
+            buffered += 6;
+            if (buffered >= 8) {
+                buffered -= 8;
+                dst[out++] = (byte) (bits >> buffered);
+            }
+        }
+        return out - offset;
+    }
+
+    /**
+     * @return base64 decoded into a new array of exactly the decoded length
+     */
+    public static byte[] decodeBase64(CharSequence base64) {
+        byte[] bytes = new byte[decodedLength(base64)];
+        decodeBase64(base64, bytes, 0);
+        return bytes;
+    }
+
+    // index of the closing quote of the string starting at from
+    private static int skipString(CharSequence s, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("unterminated string in proxy envelope");
+    }
+
+    private static int skipSpace(CharSequence s, int from, int to) {
+        while (from < to && Character.isWhitespace(s.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static boolean matches(CharSequence s, int from, int to, String key) {
+        if (to - from != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (s.charAt(from + i) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,18 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+// a message whose JSON response carries a base64 data URL in its "data"
+// field (screenshots from clients without binary support). The base64 text
+// after the comma is handed over as a view into the received frame, without
+// building a JSONObject or copying the string.
+public interface ProxyDataUrlMessage<T> extends ProxyMessage<T> {
+    public T gotResponse(CharSequence base64);
+}
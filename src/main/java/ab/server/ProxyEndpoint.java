@@ -0,0 +1,24 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+import java.util.concurrent.CompletableFuture;
+
+// something messages can be sent to: one game (ProxySession), or a Proxy,
+// which forwards to its oldest connected game
+public interface ProxyEndpoint {
+    public <T> T send(ProxyMessage<T> message);
+    public <T> T send(ProxyMessage<T> message, long timeout);
+    public <T> CompletableFuture<T> sendAsync(ProxyMessage<T> message);
+    public <T> CompletableFuture<T> sendAsync(ProxyMessage<T> message, long timeout);
+
+    public FrameCache getFrameCache();
+    public DeltaFrame getDeltaFrame();
+}
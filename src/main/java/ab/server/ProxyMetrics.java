@@ -0,0 +1,177 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/* ProxyMetrics ----------------------------------------------------------- */
+
+/**
+ * Traffic counters and per-message latency histograms for one Proxy,
+ * published as ab.server:type=ProxyMetrics,port=<port>.
+ */
+public class ProxyMetrics implements ProxyMetricsMBean {
+    private final Proxy proxy;
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong responsesReceived = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final ConcurrentHashMap<String, LatencyHistogram> latency =
+            new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentHashMap<String, LatencyHistogram> decode =
+            new ConcurrentHashMap<String, LatencyHistogram>();
+    private ObjectName name;
+
+    ProxyMetrics(Proxy proxy) {
+        this.proxy = proxy;
+    }
+
+    void register(int port) {
+        try {
+            name = new ObjectName("ab.server:type=ProxyMetrics,port=" + port);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    void unregister() {
+        try {
+            if (name != null && ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    void sent(int bytes) {
+        messagesSent.incrementAndGet();
+        bytesOut.addAndGet(bytes);
+    }
+
+    void received(int bytes) {
+        bytesIn.addAndGet(bytes);
+    }
+
+    void expired() {
+        expired.incrementAndGet();
+    }
+
+    void responded(String messageName, long roundTrip, long decodeTime) {
+        responsesReceived.incrementAndGet();
+        histogram(latency, messageName).record(roundTrip);
+        histogram(decode, messageName).record(decodeTime);
+    }
+
+    private static LatencyHistogram histogram(
+            ConcurrentHashMap<String, LatencyHistogram> map, String messageName) {
+        LatencyHistogram h = map.get(messageName);
+        if (h == null) {
+            map.putIfAbsent(messageName, new LatencyHistogram());
+            h = map.get(messageName);
+        }
+        return h;
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    @Override
+    public long getResponsesReceived() {
+        return responsesReceived.get();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    @Override
+    public int getPendingRequests() {
+        int pending = 0;
+        for (ProxySession session : proxy.getSessions()) {
+            pending += session.getPendingCount();
+        }
+        return pending;
+    }
+
+    @Override
+    public long getExpiredRequests() {
+        return expired.get();
+    }
+
+    @Override
+    public String[] getMessageNames() {
+        return latency.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public long getLatencyPercentile(String messageName, double percentile) {
+        LatencyHistogram h = latency.get(messageName);
+        return (h == null) ? 0 : h.getPercentile(percentile);
+    }
+
+    @Override
+    public double getMeanLatency(String messageName) {
+        LatencyHistogram h = latency.get(messageName);
+        return (h == null) ? 0 : h.getMean();
+    }
+
+    @Override
+    public long getResponseCount(String messageName) {
+        LatencyHistogram h = latency.get(messageName);
+        return (h == null) ? 0 : h.getCount();
+    }
+
+    @Override
+    public long getDecodePercentile(String messageName, double percentile) {
+        LatencyHistogram h = decode.get(messageName);
+        return (h == null) ? 0 : h.getPercentile(percentile);
+    }
+
+    @Override
+    public double getMeanDecodeTime(String messageName) {
+        LatencyHistogram h = decode.get(messageName);
+        return (h == null) ? 0 : h.getMean();
+    }
+
+    @Override
+    public void reset() {
+        messagesSent.set(0);
+        responsesReceived.set(0);
+        bytesOut.set(0);
+        bytesIn.set(0);
+        expired.set(0);
+        for (LatencyHistogram h : latency.values()) {
+            h.reset();
+        }
+        for (LatencyHistogram h : decode.values()) {
+            h.reset();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+// JMX view of a Proxy's traffic; durations are in microseconds
+public interface ProxyMetricsMBean {
+    public long getMessagesSent();
+    public long getResponsesReceived();
+    public long getBytesOut();
+    public long getBytesIn();
+    public int getPendingRequests();
+    public long getExpiredRequests();
+    public String[] getMessageNames();
+
+    // time from sending a message until its response arrived
+    public long getLatencyPercentile(String messageName, double percentile);
+    public double getMeanLatency(String messageName);
+    public long getResponseCount(String messageName);
+
+    // time spent turning the response into its result (base64, PNG, ...)
+    public long getDecodePercentile(String messageName, double percentile);
+    public double getMeanDecodeTime(String messageName);
+
+    public void reset();
+}
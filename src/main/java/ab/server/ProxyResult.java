@@ -0,0 +1,26 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+import java.util.concurrent.CompletableFuture;
+
+// a message waiting for its response, keyed by the id it was sent with
+class ProxyResult<T> {
+    final long id;
+    final ProxyMessage<T> message;
+    final CompletableFuture<T> future;
+    final long sentAt = System.nanoTime();
+
+    ProxyResult(long id, ProxyMessage<T> message, CompletableFuture<T> future) {
+        this.id = id;
+        this.message = message;
+        this.future = future;
+    }
+}
@@ -0,0 +1,303 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.java_websocket.WebSocket;
+
+/* ProxySession ----------------------------------------------------------- */
+
+/**
+ * One connected game client. Messages sent through a session go to that
+ * client only, and each session has its own ids, pending requests, frame
+ * cache and delta frame, so one Proxy can drive several games in parallel
+ * with one agent bound to each session.
+ * 
+ * Timeouts, retry budgets and metrics are shared with the owning Proxy.
+ */
+public class ProxySession implements ProxyEndpoint {
+    // number of messages that can wait for a response without id collisions
+    private static final int MAX_IN_FLIGHT = 1024;
+    // milliseconds send() waits beyond the last attempt's expiry
+    private static final long DEADLINE_GRACE = 1000;
+
+    // expires requests whose response is overdue
+    private static final ScheduledThreadPoolExecutor timer =
+            new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "proxy-timeout");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+    static {
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    private final Proxy proxy;
+    private final WebSocket conn;
+    private final AtomicLong id = new AtomicLong();
+    private final CorrelationTable results = new CorrelationTable(MAX_IN_FLIGHT);
+
+    // bumped whenever an input message is sent or acknowledged
+    private final AtomicLong inputGeneration = new AtomicLong();
+    private final FrameCache frameCache = new FrameCache(this);
+    private final DeltaFrame deltaFrame = new DeltaFrame();
+
+    ProxySession(Proxy proxy, WebSocket conn) {
+        this.proxy = proxy;
+        this.conn = conn;
+    }
+
+    public WebSocket getConnection() {
+        return conn;
+    }
+
+    public boolean isOpen() {
+        return conn.isOpen();
+    }
+
+    void onMessage(String message) {
+        final long arrived = System.nanoTime();
+        proxy.getMetrics().received(ProxyCodec.utf8Length(message));
+        long id = ProxyCodec.readId(message);
+
+        // hand the response over without blocking the socket reader thread
+        ProxyResult<?> result = results.remove(id);
+        if (result != null) {
+            complete(result, message, arrived);
+        }
+    }
+
+    void onMessage(ByteBuffer message) {
+        final long arrived = System.nanoTime();
+        proxy.getMetrics().received(message.remaining());
+        if (message.remaining() < 8) {
+            // no room for the id, it can't belong to any request
+            System.err.println("dropped a binary frame of " + message.remaining() + " bytes");
+            return;
+        }
+        long id = message.getLong();
+
+        ProxyResult<?> result = results.remove(id);
+        if (result != null) {
+            complete(result, message.slice(), arrived);
+        }
+    }
+
+    // fail everything still waiting, the client has gone
+    void close() {
+        for (ProxyResult<?> result : results.removeAll()) {
+            result.future.completeExceptionally(new IllegalStateException(
+                    "connection closed before " + result.message.getMessageName() + " was answered"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void complete(ProxyResult<T> result, String message, long arrived) {
+        try {
+            final int from = ProxyCodec.payloadStart(message);
+            final int to = ProxyCodec.payloadEnd(message);
+            T response;
+            if (result.message instanceof ProxyDataUrlMessage) {
+                CharSequence base64 = ProxyCodec.dataUrl(message, from, to);
+                if (base64 == null) {
+                    throw new IllegalStateException(result.message.getMessageName()
+                            + " response without a data URL");
+                }
+                response = ((ProxyDataUrlMessage<T>) result.message).gotResponse(base64);
+            } else {
+                response = result.message.gotResponse(ProxyCodec.parseObject(message, from, to));
+            }
+            responded(result, arrived);
+            result.future.complete(response);
+        } catch (RuntimeException e) {
+            result.future.completeExceptionally(e);
+        }
+    }
+
+    private <T> void complete(ProxyResult<T> result, ByteBuffer data, long arrived) {
+        if (!(result.message instanceof ProxyBinaryMessage)) {
+            result.future.completeExceptionally(new IllegalStateException(
+                    "binary response to " + result.message.getMessageName()));
+            return;
+        }
+        try {
+            T response = ((ProxyBinaryMessage<T>) result.message).gotResponse(data);
+            responded(result, arrived);
+            result.future.complete(response);
+        } catch (RuntimeException e) {
+            result.future.completeExceptionally(e);
+        }
+    }
+
+    private void responded(ProxyResult<?> result, long arrived) {
+        if (result.message instanceof ProxyInputMessage) {
+            inputGeneration.incrementAndGet();
+        }
+        proxy.getMetrics().responded(result.message.getMessageName(), arrived - result.sentAt,
+                System.nanoTime() - arrived);
+    }
+
+    /**
+     * Send a message and block until its response arrives or the default
+     * timeout (including retries) runs out.
+     * 
+     * @return the decoded response, or null if the wait was interrupted,
+     *         timed out or the response could not be decoded
+     */
+    @Override
+    public <T> T send(ProxyMessage<T> message) {
+        return send(message, proxy.getDefaultTimeout());
+    }
+
+    /**
+     * As send(message), waiting at most timeout milliseconds per attempt.
+     */
+    @Override
+    public <T> T send(ProxyMessage<T> message, long timeout) {
+        CompletableFuture<T> future = sendAsync(message, timeout);
+        try {
+            if (timeout <= 0) {
+                return future.get();
+            }
+            // every attempt may use its full timeout; the grace covers
+            // decoding a response that arrives just before the last expiry
+            long deadline = timeout * (proxy.getRetryBudget(message.getMessageName()) + 1)
+                    + DEADLINE_GRACE;
+            return future.get(deadline, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            e.printStackTrace();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Send a message without waiting for its response. Any number of
+     * messages may be outstanding at once; responses
+     * are matched to requests by id, so they may arrive in any order.
+     * 
+     * @return a future completed with the decoded response
+     */
+    @Override
+    public <T> CompletableFuture<T> sendAsync(ProxyMessage<T> message) {
+        return sendAsync(message, proxy.getDefaultTimeout());
+    }
+
+    /**
+     * Send a message that expires if no response arrives within timeout
+     * milliseconds (<= 0 waits forever). An expired message is resent with
+     * a fresh id while its retry budget lasts, after which the future fails
+     * with a TimeoutException. Cancelling the future drops the request.
+     * 
+     * @return a future completed with the decoded response
+     */
+    @Override
+    public <T> CompletableFuture<T> sendAsync(ProxyMessage<T> message, long timeout) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        dispatch(message, future, timeout, proxy.getRetryBudget(message.getMessageName()));
+        return future;
+    }
+
+    private <T> void dispatch(final ProxyMessage<T> message,
+            final CompletableFuture<T> future, final long timeout, final int retries) {
+        final long messageId = id.getAndIncrement();
+
+        // a retry runs on the timer thread, which would swallow anything
+        // thrown here and leave the future waiting forever
+        final ScheduledFuture<?> expiry;
+        try {
+            results.put(new ProxyResult<T>(messageId, message, future));
+            if (message instanceof ProxyInputMessage) {
+                inputGeneration.incrementAndGet();
+            }
+
+            expiry = (timeout <= 0) ? null : timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (results.remove(messageId) == null) {
+                        // answered in the meantime
+                        return;
+                    }
+                    proxy.getMetrics().expired();
+                    if (retries > 0) {
+                        dispatch(message, future, timeout, retries - 1);
+                    } else {
+                        future.completeExceptionally(new TimeoutException(message.getMessageName()
+                                + " got no response within " + timeout + "ms"));
+                    }
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            results.remove(messageId);
+            future.completeExceptionally(e);
+            return;
+        }
+
+        // however the request ends (answered, failed or cancelled by the
+        // caller) it must not stay behind in the table or the timer queue
+        future.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T response, Throwable failure) {
+                results.remove(messageId);
+                if (expiry != null) {
+                    expiry.cancel(false);
+                }
+            }
+        });
+
+        try {
+            final String json = ProxyCodec.encode(messageId, message.getMessageName(),
+                    message.getJSON());
+            conn.send(json);
+            proxy.getMetrics().sent(ProxyCodec.utf8Length(json));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    // shared screenshot cache, invalidated by input messages
+    @Override
+    public FrameCache getFrameCache() {
+        return frameCache;
+    }
+
+    // reconstruction buffer for ProxyDeltaScreenshotMessage
+    @Override
+    public DeltaFrame getDeltaFrame() {
+        return deltaFrame;
+    }
+
+    // number of messages waiting for a response
+    public int getPendingCount() {
+        return results.size();
+    }
+
+    long getInputGeneration() {
+        return inputGeneration.get();
+    }
+}
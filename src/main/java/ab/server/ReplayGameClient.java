@@ -0,0 +1,155 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+/* ReplayGameClient ------------------------------------------------------- */
+
+/**
+ * Headless game client that plays back frames recorded by
+ * GameImageRecorder. Every screenshot request gets the next frame of the
+ * recording (wrapping around at the end), every other command is
+ * acknowledged, and each response is held back by a configurable latency
+ * plus uniformly distributed jitter. The jitter is drawn from a seeded
+ * generator, so runs are reproducible.
+ * 
+ * Responses are sent from a single timer thread; with jitter they may go
+ * out in a different order than the requests came in, as with a real
+ * browser.
+ */
+public class ReplayGameClient extends LocalGameClient {
+    private final List<BufferedImage> frames;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final Random random = new Random(0);
+    private final AtomicLong served = new AtomicLong();
+    private volatile long latency, jitter;
+    private int next = 0;
+
+    public ReplayGameClient(URI serverUri, List<BufferedImage> frames) {
+        super(serverUri);
+        if (frames.isEmpty()) {
+            throw new IllegalArgumentException("no frames to replay");
+        }
+        this.frames = frames;
+    }
+
+    public ReplayGameClient(int port, List<BufferedImage> frames) {
+        this(URI.create("ws://localhost:" + port), frames);
+    }
+
+    /**
+     * Load every PNG in a directory, in file name order.
+     */
+    public static List<BufferedImage> loadFrames(File directory) throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".png");
+            }
+        });
+        if (files == null) {
+            throw new IOException(directory + " is not a directory");
+        }
+        Arrays.sort(files);
+
+        List<BufferedImage> frames = new ArrayList<BufferedImage>(files.length);
+        for (File file : files) {
+            frames.add(ImageIO.read(file));
+        }
+        return frames;
+    }
+
+    /**
+     * @param latency milliseconds every response is delayed by
+     * @param jitter up to this many extra milliseconds, chosen at random
+     */
+    public void setLatency(long latency, long jitter) {
+        this.latency = latency;
+        this.jitter = jitter;
+    }
+
+    // number of requests answered so far
+    public long getServedCount() {
+        return served.get();
+    }
+
+    @Override
+    protected synchronized BufferedImage nextFrame() {
+        BufferedImage frame = frames.get(next);
+        next = (next + 1) % frames.size();
+        return frame;
+    }
+
+    @Override
+    public void onMessage(final String message) {
+        long delay = latency;
+        if (jitter > 0) {
+            synchronized (random) {
+                delay += (long) (random.nextDouble() * jitter);
+            }
+        }
+
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                ReplayGameClient.super.onMessage(message);
+                served.incrementAndGet();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onClose(int code, String reason, boolean remote) {
+        timer.shutdownNow();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("USAGE: java ReplayGameClient <directory> [<port> [<latency ms> [<jitter ms>]]]");
+            System.exit(1);
+        }
+
+        List<BufferedImage> frames = loadFrames(new File(args[0]));
+        int port = (args.length > 1) ? Integer.parseInt(args[1]) : 9000;
+        ReplayGameClient client = new ReplayGameClient(port, frames);
+        client.setLatency((args.length > 2) ? Long.parseLong(args[2]) : 0,
+                (args.length > 3) ? Long.parseLong(args[3]) : 0);
+
+        System.out.println("Replaying " + frames.size() + " frames to port " + port);
+        if (!client.connectBlocking()) {
+            System.err.println("ERROR: could not connect to proxy on port " + port);
+            System.exit(1);
+        }
+
+        // report throughput until the proxy goes away
+        long last = 0;
+        while (client.getConnection().isOpen()) {
+            Thread.sleep(1000);
+            long served = client.getServedCount();
+            System.out.println((served - last) + " requests/s");
+            last = served;
+        }
+    }
+}
@@ -0,0 +1,410 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+
+package ab.server;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/* SharedFrameRing -------------------------------------------------------- */
+
+/**
+ * Screenshots passed through a memory-mapped file, for a game client that
+ * runs on the same host as the agent. The writer publishes each frame into
+ * the next slot of a fixed ring; readers map the file and see a frame as an
+ * IntBuffer straight over the shared pages, without any socket or copy.
+ * Commands still go over the usual Proxy or ClientActionRobot channel.
+ * 
+ * File layout, in native byte order:
+ * 
+ *   header  int magic, int slots, int width, int height, long latest
+ *           sequence (-1 before the first frame), padded to 64 bytes
+ *   slot    long stamp, long timestamp (ms since the epoch), padded to
+ *           32 bytes, then width * height 0x00RRGGBB ints in row order
+ * 
+ * Frame n goes to slot n % slots. A slot's stamp is -1 while it is being
+ * written and n once frame n is complete, so a reader can tell whether the
+ * writer overwrote a frame while it was being read: check isValid(n) after
+ * using the buffer (see read).
+ * 
+ * Readers take frames either without any copy, as an IntBuffer handed to a
+ * Reader, or with one bulk copy into their own int array (read(int[]),
+ * FrameBuffer.load). ClientActionRobot takes its screenshots from the ring
+ * named by the ab.frameRing system property, see openConfigured().
+ */
+public class SharedFrameRing {
+    // system property with the path of the ring file clients read from
+    public static final String RING_PROPERTY = "ab.frameRing";
+
+    /**
+     * Looks at a frame in place. The buffer is only valid during the call;
+     * if the writer overwrote the frame meanwhile, read() calls again with
+     * a newer frame, so only the last call's result may be kept.
+     */
+    public interface Reader {
+        void read(IntBuffer pixels, int width, int height);
+    }
+
+    private static final int MAGIC = 0x41424652; // "ABFR"
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_HEADER_SIZE = 32;
+    private static final int LATEST = 16;
+    private static final long WRITING = -1;
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final MappedByteBuffer map;
+    private final int slots, width, height, slotSize;
+    // pixel views of each slot, created once (read-only for readers)
+    private final IntBuffer[] views;
+    private long sequence;
+
+    private SharedFrameRing(MappedByteBuffer map, int slots, int width, int height) {
+        this.map = map;
+        this.slots = slots;
+        this.width = width;
+        this.height = height;
+        this.slotSize = (int) slotSize(width, height);
+
+        map.order(ByteOrder.nativeOrder());
+        views = new IntBuffer[slots];
+        for (int i = 0; i < slots; i++) {
+            int pixels = slotOffset(i) + SLOT_HEADER_SIZE;
+            map.limit(pixels + 4 * width * height).position(pixels);
+            views[i] = map.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+            map.clear();
+        }
+        sequence = latest();
+    }
+
+    private static long slotSize(int width, int height) {
+        // keep every slot 64 byte aligned
+        return (SLOT_HEADER_SIZE + 4L * width * height + 63) & ~63L;
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_SIZE + slot * slotSize;
+    }
+
+    /**
+     * Create a ring file for the writer. A ring of the same shape that is
+     * already there is reused in place and its sequence continues, so readers
+     * that have it mapped keep working. Anything else is replaced by a new
+     * file moved over it; the old one is never truncated under a reader.
+     */
+    public static SharedFrameRing create(File file, int slots, int width, int height)
+            throws IOException {
+        if (slots <= 0 || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("bad ring shape " + slots + " x " + width + "x" + height);
+        }
+        final long size = size(slots, width, height);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("ring of " + size + " bytes too large to map");
+        }
+        if (file.exists()) {
+            MappedByteBuffer map = mapExisting(file, FileChannel.MapMode.READ_WRITE);
+            if (map != null && map.getInt(4) == slots && map.getInt(8) == width
+                    && map.getInt(12) == height) {
+                return new SharedFrameRing(map, slots, width, height);
+            }
+        }
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+            MappedByteBuffer map;
+            try {
+                raf.setLength(size);
+                map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } finally {
+                // the mapping stays valid after the file is closed
+                raf.close();
+            }
+            map.order(ByteOrder.nativeOrder());
+            final int slotSize = (int) slotSize(width, height);
+            for (int i = 0; i < slots; i++) {
+                map.putLong(HEADER_SIZE + i * slotSize, WRITING);
+            }
+            map.putInt(4, slots).putInt(8, width).putInt(12, height);
+            LONGS.setRelease(map, LATEST, -1L);
+            map.putInt(0, MAGIC);
+            // readers only ever see the file complete
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return new SharedFrameRing(map, slots, width, height);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Map an existing ring file for reading.
+     * 
+     * @throws IOException if the file is not a ring, or is shorter than its
+     *         header says
+     */
+    public static SharedFrameRing open(File file) throws IOException {
+        MappedByteBuffer map = mapExisting(file, FileChannel.MapMode.READ_ONLY);
+        if (map == null) {
+            throw new IOException(file + " is not a frame ring, or truncated");
+        }
+        return new SharedFrameRing(map, map.getInt(4), map.getInt(8), map.getInt(12));
+    }
+
+    /**
+     * Open the ring named by the ab.frameRing system property.
+     * 
+     * @return the ring, or null if the property is not set
+     */
+    public static SharedFrameRing openConfigured() throws IOException {
+        String path = System.getProperty(RING_PROPERTY);
+        return (path == null || path.isEmpty()) ? null : open(new File(path));
+    }
+
+    // map a whole ring file, null unless its header is sound and the file
+    // holds every slot the header announces
+    private static MappedByteBuffer mapExisting(File file, FileChannel.MapMode mode)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file,
+                (mode == FileChannel.MapMode.READ_ONLY) ? "r" : "rw");
+        try {
+            final long length = raf.length();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer map = raf.getChannel().map(mode, 0, length);
+            map.order(ByteOrder.nativeOrder());
+            final int slots = map.getInt(4), width = map.getInt(8), height = map.getInt(12);
+            if (map.getInt(0) != MAGIC || slots <= 0 || width <= 0 || height <= 0
+                    || (long) width * height > Integer.MAX_VALUE / 4
+                    || length < size(slots, width, height)) {
+                return null;
+            }
+            return map;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static long size(int slots, int width, int height) {
+        return HEADER_SIZE + (long) slots * slotSize(width, height);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    /* writer -------------------------------------------------------------- */
+
+    /**
+     * Publish the next frame (width * height packed RGB ints in row order).
+     * Only one thread may publish.
+     * 
+     * @return the frame's sequence number
+     */
+    public long publish(int[] pixels) {
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("frame smaller than " + width + "x" + height);
+        }
+        final long n = ++sequence;
+        final int slot = (int) (n % slots);
+        final int offset = slotOffset(slot);
+
+        LONGS.setRelease(map, offset, WRITING);
+        VarHandle.storeStoreFence();
+        map.putLong(offset + 8, System.currentTimeMillis());
+        IntBuffer out = views[slot];
+        out.clear();
+        out.put(pixels, 0, width * height);
+        LONGS.setRelease(map, offset, n);
+        LONGS.setRelease(map, LATEST, n);
+        return n;
+    }
+
+    /**
+     * Publish an image of the ring's size.
+     */
+    public long publish(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB && image.getWidth() == width
+                && image.getHeight() == height) {
+            return publish(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+        }
+        return publish(image.getRGB(0, 0, width, height, null, 0, width));
+    }
+
+    /* reader -------------------------------------------------------------- */
+
+    /**
+     * @return the sequence number of the newest complete frame, -1 if none
+     */
+    public long latest() {
+        return (long) LONGS.getAcquire(map, LATEST);
+    }
+
+    /**
+     * A view of frame n's pixels in the shared pages. Only valid while the
+     * writer hasn't come round to the slot again; check isValid(n) after
+     * reading.
+     * 
+     * @return the pixels, or null if frame n is no longer (or not yet) there
+     */
+    public IntBuffer view(long n) {
+        if (n < 0 || !isValid(n)) {
+            return null;
+        }
+        return views[(int) (n % slots)].asReadOnlyBuffer();
+    }
+
+    /**
+     * @return true if the slot of frame n still holds frame n
+     */
+    public boolean isValid(long n) {
+        // pixel reads before this must not move after the stamp read
+        VarHandle.loadLoadFence();
+        return (long) LONGS.getAcquire(map, slotOffset((int) (n % slots))) == n;
+    }
+
+    // when frame n was published, in ms since the epoch
+    public long getTimestamp(long n) {
+        return map.getLong(slotOffset((int) (n % slots)) + 8);
+    }
+
+    /**
+     * Hand the newest frame to reader in place, without copying it, calling
+     * again with a newer frame if the writer overwrote it meanwhile.
+     * 
+     * @return the frame's sequence number, -1 if nothing was published yet
+     */
+    public long read(Reader reader) {
+        while (true) {
+            final long n = latest();
+            IntBuffer pixels = view(n);
+            if (pixels == null) {
+                if (n < 0) {
+                    return -1;
+                }
+                // overwritten between latest() and view(), try the next one
+                continue;
+            }
+            reader.read(pixels, width, height);
+            if (isValid(n)) {
+                return n;
+            }
+        }
+    }
+
+    /**
+     * Copy the newest frame into pixels (at least width * height ints, row
+     * order, 0x00RRGGBB) in one bulk copy, retrying if the writer overwrote
+     * it meanwhile.
+     * 
+     * @return the frame's sequence number, -1 if nothing was published yet
+     */
+    public long read(final int[] pixels) {
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("array smaller than " + width + "x" + height);
+        }
+        return read(new Reader() {
+            @Override
+            public void read(IntBuffer frame, int width, int height) {
+                frame.get(pixels, 0, width * height);
+            }
+        });
+    }
+
+    /**
+     * Wait up to timeout milliseconds for a frame published at or after
+     * since (ms since the epoch), e.g. one that shows the effect of a shot.
+     * 
+     * @return the newest frame's sequence number, or -1 on timeout
+     */
+    public long await(long since, long timeout) {
+        final long deadline = System.nanoTime() + timeout * 1000000L;
+        while (true) {
+            final long n = latest();
+            if (n >= 0 && getTimestamp(n) >= since) {
+                return n;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return -1;
+            }
+            LockSupport.parkNanos(1000000L);
+        }
+    }
+
+    /**
+     * Copy the newest frame into a TYPE_INT_RGB image from the given pool (or
+     * a new image if pool is null), for callers that need a BufferedImage;
+     * read(Reader) and read(int[]) avoid the image.
+     * 
+     * @return the frame, or null if nothing was published yet
+     */
+    public BufferedImage readFrame(FramePool pool) {
+        BufferedImage image = (pool == null)
+                ? new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB)
+                : pool.acquire(width, height, BufferedImage.TYPE_INT_RGB);
+        if (read(((DataBufferInt) image.getRaster().getDataBuffer()).getData()) < 0) {
+            FramePool.recycle(image);
+            return null;
+        }
+        return image;
+    }
+
+    /**
+     * Stand-in for a co-located game client: publishes the PNGs of a
+     * directory to a ring file at a fixed rate, round and round.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("USAGE: java SharedFrameRing <ring file> <directory> [<fps> [<slots>]]");
+            System.exit(1);
+        }
+
+        List<BufferedImage> frames = ReplayGameClient.loadFrames(new File(args[1]));
+        int fps = (args.length > 2) ? Integer.parseInt(args[2]) : 30;
+        int slots = (args.length > 3) ? Integer.parseInt(args[3]) : 4;
+        BufferedImage first = frames.get(0);
+        SharedFrameRing ring = create(new File(args[0]), slots, first.getWidth(), first.getHeight());
+
+        System.out.println("Publishing " + frames.size() + " frames to " + args[0] + " at " + fps + " fps");
+        final long period = 1000000000L / fps;
+        long next = System.nanoTime();
+        for (int i = 0;; i = (i + 1) % frames.size()) {
+            ring.publish(frames.get(i));
+            next += period;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+            }
+        }
+    }
+}
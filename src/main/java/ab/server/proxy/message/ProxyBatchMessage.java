@@ -0,0 +1,99 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+package ab.server.proxy.message;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import ab.server.ProxyInputMessage;
+
+/**
+ * An ordered list of click, drag and mouse wheel commands that the client
+ * plays back in one go and acknowledges once. Each command may ask the
+ * client to wait before running it, so menu sequences that need the UI to
+ * settle between clicks still cost only a single round trip.
+ */
+public class ProxyBatchMessage implements ProxyInputMessage {
+	private JSONArray commands = new JSONArray();
+
+	/**
+	 * Batch of count identical mouse wheel scrolls
+	 * 
+	 * @param delta the direction to scroll (-1 = up, 1 = down)
+	 */
+	public static ProxyBatchMessage mouseWheel(int delta, int count) {
+		ProxyBatchMessage batch = new ProxyBatchMessage();
+		for (int k = 0; k < count; k++) {
+			batch.add(new ProxyMouseWheelMessage(delta));
+		}
+		return batch;
+	}
+
+	public ProxyBatchMessage add(ProxyClickMessage click) {
+		return add(click, 0);
+	}
+
+	public ProxyBatchMessage add(ProxyDragMessage drag) {
+		return add(drag, 0);
+	}
+
+	public ProxyBatchMessage add(ProxyMouseWheelMessage wheel) {
+		return add(wheel, 0);
+	}
+
+	/**
+	 * @param delay milliseconds the client waits after the previous command
+	 *        before running this one
+	 */
+	public ProxyBatchMessage add(ProxyClickMessage click, int delay) {
+		return add((ProxyInputMessage) click, delay);
+	}
+
+	public ProxyBatchMessage add(ProxyDragMessage drag, int delay) {
+		return add((ProxyInputMessage) drag, delay);
+	}
+
+	public ProxyBatchMessage add(ProxyMouseWheelMessage wheel, int delay) {
+		return add((ProxyInputMessage) wheel, delay);
+	}
+
+	@SuppressWarnings("unchecked")
+	private ProxyBatchMessage add(ProxyInputMessage command, int delay) {
+		JSONObject o = new JSONObject();
+		o.put("name", command.getMessageName());
+		o.put("data", command.getJSON());
+		if (delay > 0) {
+			o.put("delay", delay);
+		}
+		commands.add(o);
+		return this;
+	}
+
+	public boolean isEmpty() {
+		return commands.isEmpty();
+	}
+
+	@Override
+	public String getMessageName() {
+		return "batch";
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public JSONObject getJSON() {
+		JSONObject o = new JSONObject();
+		o.put("commands", commands);
+		return o;
+	}
+
+	@Override
+	public Object gotResponse(JSONObject data) {
+		return new Object();
+	}
+}
@@ -10,9 +10,9 @@ package ab.server.proxy.message;
 
 import org.json.simple.JSONObject;
 
-import ab.server.ProxyMessage;
+import ab.server.ProxyInputMessage;
 
-public class ProxyClickMessage implements ProxyMessage<Object> {
+public class ProxyClickMessage implements ProxyInputMessage {
 	private int x, y;
 	
 	public ProxyClickMessage(int x, int y) {
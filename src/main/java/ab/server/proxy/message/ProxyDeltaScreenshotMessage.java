@@ -0,0 +1,99 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+package ab.server.proxy.message;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+import org.json.simple.JSONObject;
+
+import ab.server.DeltaFrame;
+import ab.server.ProxyBinaryMessage;
+import ab.server.ProxyDataUrlMessage;
+import ab.server.ProxyEndpoint;
+
+/**
+ * Request a screenshot as the tiles that changed since the last frame
+ * received into the given DeltaFrame. Meant for high-rate polling, where
+ * consecutive frames are nearly identical. Clients without delta support
+ * send the whole frame as a PNG data URL instead.
+ * 
+ * A delta that can't be applied (against a frame other than the one held,
+ * e.g. after a response was lost, or malformed) fails the request and
+ * resets the DeltaFrame; screenshot(endpoint) then asks again for a key
+ * frame, so callers only see null when the screenshot really failed.
+ */
+public class ProxyDeltaScreenshotMessage implements ProxyBinaryMessage<BufferedImage>,
+        ProxyDataUrlMessage<BufferedImage> {
+    public static final int DEFAULT_TILE_SIZE = 16;
+
+    private final DeltaFrame frame;
+    private final int tileSize;
+
+    public ProxyDeltaScreenshotMessage(DeltaFrame frame) {
+        this(frame, DEFAULT_TILE_SIZE);
+    }
+
+    public ProxyDeltaScreenshotMessage(DeltaFrame frame, int tileSize) {
+        this.frame = frame;
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Take a screenshot through the endpoint's DeltaFrame, requesting a key
+     * frame straight away if the delta was rejected.
+     * 
+     * @return the frame, or null if it could not be taken or no game is
+     *         connected
+     */
+    public static BufferedImage screenshot(ProxyEndpoint endpoint) {
+        DeltaFrame frame = endpoint.getDeltaFrame();
+        if (frame == null) {
+            return null;
+        }
+        final long base = frame.getSequence();
+        BufferedImage image = endpoint.send(new ProxyDeltaScreenshotMessage(frame));
+        // a rejected delta resets the frame; a timeout leaves it as it was
+        if (image == null && base != DeltaFrame.NONE && frame.getSequence() == DeltaFrame.NONE) {
+            image = endpoint.send(new ProxyDeltaScreenshotMessage(frame));
+        }
+        return image;
+    }
+
+    @Override
+    public String getMessageName() {
+        return "screenshot";
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JSONObject getJSON() {
+        JSONObject o = new JSONObject();
+        o.put("binary", true);
+        o.put("format", "delta");
+        o.put("tile", tileSize);
+        o.put("base", frame.getSequence());
+        return o;
+    }
+
+    @Override
+    public BufferedImage gotResponse(JSONObject data) {
+        return new ProxyRawScreenshotMessage().gotResponse(data);
+    }
+
+    @Override
+    public BufferedImage gotResponse(CharSequence base64) {
+        return new ProxyRawScreenshotMessage().gotResponse(base64);
+    }
+
+    @Override
+    public BufferedImage gotResponse(ByteBuffer data) {
+        return frame.apply(data);
+    }
+}
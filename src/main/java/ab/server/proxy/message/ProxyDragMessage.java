@@ -10,9 +10,9 @@ package ab.server.proxy.message;
 
 import org.json.simple.JSONObject;
 
-import ab.server.ProxyMessage;
+import ab.server.ProxyInputMessage;
 
-public class ProxyDragMessage implements ProxyMessage<Object> {
+public class ProxyDragMessage implements ProxyInputMessage {
 	private int x, y, dx, dy;
 	
 	public ProxyDragMessage(int x, int y, int dx, int dy) {
@@ -10,9 +10,9 @@ package ab.server.proxy.message;
 
 import org.json.simple.JSONObject;
 
-import ab.server.ProxyMessage;
+import ab.server.ProxyInputMessage;
 
-public class ProxyMouseWheelMessage implements ProxyMessage<Object> {
+public class ProxyMouseWheelMessage implements ProxyInputMessage {
 	private int delta;
 	
 	/**
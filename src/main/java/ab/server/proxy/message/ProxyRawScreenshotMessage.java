@@ -0,0 +1,99 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+package ab.server.proxy.message;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.ImageIO;
+
+import org.json.simple.JSONObject;
+
+import ab.server.FramePool;
+import ab.server.ProxyBinaryMessage;
+import ab.server.ProxyCodec;
+import ab.server.ProxyDataUrlMessage;
+
+/**
+ * Request a screenshot as raw pixels, skipping PNG encoding in the browser
+ * and decoding here. The binary response is the frame width and height as
+ * big-endian ints followed by one packed 0x00RRGGBB int per pixel in row
+ * order, which is copied straight into the raster of a TYPE_INT_RGB image.
+ * 
+ * Clients without raw support answer with the usual PNG data URL, which is
+ * decoded with ImageIO instead.
+ * 
+ * Given a FramePool, the image is taken from the pool and the caller owns it
+ * until it is recycled. Otherwise every response is a new image.
+ */
+public class ProxyRawScreenshotMessage implements ProxyBinaryMessage<BufferedImage>,
+        ProxyDataUrlMessage<BufferedImage> {
+    private final FramePool pool;
+
+    public ProxyRawScreenshotMessage() {
+        this(null);
+    }
+
+    public ProxyRawScreenshotMessage(FramePool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public String getMessageName() {
+        return "screenshot";
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JSONObject getJSON() {
+        JSONObject o = new JSONObject();
+        o.put("binary", true);
+        o.put("format", "raw");
+        return o;
+    }
+
+    @Override
+    public BufferedImage gotResponse(JSONObject data) {
+        return gotResponse(ProxyCodec.dataUrl((String) data.get("data")));
+    }
+
+    @Override
+    public BufferedImage gotResponse(CharSequence base64) {
+        // the decoded PNG is only needed until ImageIO has read it
+        FramePool buffers = (pool == null) ? FramePool.getShared() : pool;
+        byte[] png = buffers.acquireBuffer(ProxyCodec.decodedLength(base64));
+        try {
+            int length = ProxyCodec.decodeBase64(base64, png, 0);
+            if (pool != null) {
+                return pool.decodePng(png, 0, length);
+            }
+            return ImageIO.read(new ByteArrayInputStream(png, 0, length));
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to decode screenshot", e);
+        } finally {
+            buffers.release(png);
+        }
+    }
+
+    @Override
+    public BufferedImage gotResponse(ByteBuffer data) {
+        final int width = data.getInt();
+        final int height = data.getInt();
+
+        BufferedImage image = (pool == null)
+                ? new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB)
+                : pool.acquire(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        data.asIntBuffer().get(pixels);
+        return image;
+    }
+}
@@ -0,0 +1,148 @@
+/*****************************************************************************
+** ANGRYBIRDS AI AGENT FRAMEWORK
+** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+**  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+*****************************************************************************/
+package ab.server.proxy.message;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import ab.server.FramePool;
+import ab.server.ProxyBinaryMessage;
+import ab.server.ProxyDataUrlMessage;
+
+/**
+ * Request only some rectangles of the screen as raw pixels, in the
+ * "regions" format. The binary response is the full frame width and
+ * height, the number of regions, then for each region its x, y, width and
+ * height followed by its packed 0x00RRGGBB pixels in row order (all
+ * big-endian ints). A response whose regions don't fit the frame or the
+ * message is rejected with an IllegalStateException.
+ * 
+ * The regions are copied into a full-size TYPE_INT_RGB image at their
+ * original position and everything else is left black, so code written for
+ * full screenshots (e.g. GameStateExtractor) works unchanged as long as it
+ * only looks inside the requested regions. Clients without region support
+ * send the whole frame as a PNG data URL instead.
+ * 
+ * Given a FramePool, the image is taken from the pool and the caller owns it
+ * until it is recycled.
+ */
+public class ProxyRegionScreenshotMessage implements ProxyBinaryMessage<BufferedImage>,
+        ProxyDataUrlMessage<BufferedImage> {
+    private final FramePool pool;
+    private final Rectangle[] regions;
+
+    public ProxyRegionScreenshotMessage(Rectangle... regions) {
+        this(null, regions);
+    }
+
+    public ProxyRegionScreenshotMessage(FramePool pool, Rectangle... regions) {
+        this.pool = pool;
+        this.regions = regions;
+    }
+
+    @Override
+    public String getMessageName() {
+        return "screenshot";
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JSONObject getJSON() {
+        JSONArray a = new JSONArray();
+        for (Rectangle r : regions) {
+            JSONArray region = new JSONArray();
+            region.add(r.x);
+            region.add(r.y);
+            region.add(r.width);
+            region.add(r.height);
+            a.add(region);
+        }
+
+        JSONObject o = new JSONObject();
+        o.put("binary", true);
+        o.put("format", "regions");
+        o.put("regions", a);
+        return o;
+    }
+
+    @Override
+    public BufferedImage gotResponse(JSONObject data) {
+        return new ProxyRawScreenshotMessage(pool).gotResponse(data);
+    }
+
+    @Override
+    public BufferedImage gotResponse(CharSequence base64) {
+        return new ProxyRawScreenshotMessage(pool).gotResponse(base64);
+    }
+
+    @Override
+    public BufferedImage gotResponse(ByteBuffer data) {
+        if (data.remaining() < 12) {
+            throw new IllegalStateException("region response of " + data.remaining() + " bytes");
+        }
+        final int width = data.getInt();
+        final int height = data.getInt();
+        final int count = data.getInt();
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalStateException("bad frame size " + width + "x" + height);
+        }
+        if (count < 0 || 16L * count > data.remaining()) {
+            throw new IllegalStateException(count + " regions in " + data.remaining() + " bytes");
+        }
+
+        BufferedImage image;
+        int[] pixels;
+        if (pool == null) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        } else {
+            // a recycled image still holds the previous frame
+            image = pool.acquire(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            Arrays.fill(pixels, 0);
+        }
+        try {
+            for (int i = 0; i < count; i++) {
+                if (data.remaining() < 16) {
+                    throw new IllegalStateException("region " + i + " of " + count + " missing");
+                }
+                final int x = data.getInt();
+                final int y = data.getInt();
+                final int w = data.getInt();
+                final int h = data.getInt();
+                if (x < 0 || y < 0 || w < 0 || h < 0 || (long) x + w > width
+                        || (long) y + h > height) {
+                    throw new IllegalStateException("region " + x + "," + y + " " + w + "x" + h
+                            + " outside the " + width + "x" + height + " frame");
+                }
+                if (4L * w * h > data.remaining()) {
+                    throw new IllegalStateException("region " + x + "," + y + " " + w + "x" + h
+                            + " truncated");
+                }
+
+                IntBuffer region = data.asIntBuffer();
+                for (int row = 0; row < h; row++) {
+                    region.get(pixels, (y + row) * width + x, w);
+                }
+                data.position(data.position() + 4 * w * h);
+            }
+        } catch (IllegalStateException e) {
+            FramePool.recycle(image);
+            throw e;
+        }
+        return image;
+    }
+}
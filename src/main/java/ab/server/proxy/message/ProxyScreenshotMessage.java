@@ -8,28 +8,46 @@
 *****************************************************************************/
 package ab.server.proxy.message;
 
-import org.apache.commons.codec.binary.Base64;
+import java.nio.ByteBuffer;
+
 import org.json.simple.JSONObject;
 
-import ab.server.ProxyMessage;
+import ab.server.ProxyBinaryMessage;
+import ab.server.ProxyCodec;
+import ab.server.ProxyDataUrlMessage;
 
-// request a screenshot from the game
-public class ProxyScreenshotMessage implements ProxyMessage<byte[]> {
+// request a screenshot from the game. Clients that understand the "binary"
+// flag reply with the raw PNG bytes in a binary frame, others with a base64
+// data URL in JSON.
+public class ProxyScreenshotMessage implements ProxyBinaryMessage<byte[]>,
+        ProxyDataUrlMessage<byte[]> {
     @Override
     public String getMessageName() {
         return "screenshot";
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public JSONObject getJSON() {
-        return new JSONObject();
+        JSONObject o = new JSONObject();
+        o.put("binary", true);
+        return o;
     }
 
     @Override
     public byte[] gotResponse(JSONObject data) {
-        String imageStr = (String) data.get("data");
-        imageStr = imageStr.split(",", 2)[1];
-        byte[] imageBytes = Base64.decodeBase64(imageStr);
+        return gotResponse(ProxyCodec.dataUrl((String) data.get("data")));
+    }
+
+    @Override
+    public byte[] gotResponse(CharSequence base64) {
+        return ProxyCodec.decodeBase64(base64);
+    }
+
+    @Override
+    public byte[] gotResponse(ByteBuffer data) {
+        byte[] imageBytes = new byte[data.remaining()];
+        data.get(imageBytes);
         return imageBytes;
     }
 }
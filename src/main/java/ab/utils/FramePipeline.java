@@ -0,0 +1,270 @@
+/*****************************************************************************
+ ** ANGRYBIRDS AI AGENT FRAMEWORK
+ ** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+ **  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+ ** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+ *****************************************************************************/
+package ab.utils;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import ab.server.FramePool;
+import ab.server.ProxyEndpoint;
+import ab.server.proxy.message.ProxyScreenshotMessage;
+
+/* FramePipeline ---------------------------------------------------------- */
+
+/**
+ * Runs capture, decode and analysis of screenshots on three threads, so
+ * that waiting for the next frame, decoding it and analysing the previous
+ * one overlap. The stages are joined by SpscRings: when a later stage falls
+ * behind, the oldest waiting frames are dropped, never queued up, and the
+ * analysis always sees a recent frame.
+ *
+ * Frames handed to the analysis belong to it. Decoded frames dropped on the
+ * way are passed to the Discard hook, e.g. to return them to a FramePool.
+ */
+public class FramePipeline<E, F> {
+
+    public interface Capture<E> {
+        // @return the next encoded frame, or null if none could be taken
+        E capture() throws Exception;
+    }
+
+    public interface Decode<E, F> {
+        F decode(E encoded) throws Exception;
+    }
+
+    public interface Analyse<F> {
+        void analyse(F frame) throws Exception;
+    }
+
+    public interface Discard<F> {
+        void discard(F frame);
+    }
+
+    // how long a stage waits for input before checking whether to stop
+    private static final long POLL_MILLIS = 100;
+    // back-off after the capture came back empty, e.g. no client connected
+    private static final long RETRY_MILLIS = 50;
+
+    private final Capture<E> capture;
+    private final Decode<E, F> decode;
+    private final Analyse<F> analyse;
+    private volatile Discard<F> discard = null;
+
+    private final SpscRing<E> encoded;
+    private final SpscRing<F> decoded;
+
+    private volatile long captureInterval = 0;
+    private volatile boolean running = false;
+    private List<Stage> stages = null;
+
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong analysed = new AtomicLong();
+
+    /**
+     * @param depth number of frames each ring holds before it starts dropping
+     *        the oldest; 1 always hands the newest frame on
+     */
+    public FramePipeline(Capture<E> capture, Decode<E, F> decode,
+            Analyse<F> analyse, int depth) {
+        this.capture = capture;
+        this.decode = decode;
+        this.analyse = analyse;
+        encoded = new SpscRing<E>(depth);
+        decoded = new SpscRing<F>(depth);
+    }
+
+    /**
+     * A pipeline that takes full PNG screenshots from the given game and
+     * decodes them into images from the shared FramePool. Dropped images are
+     * recycled; the analysis should recycle the ones it does not keep.
+     */
+    public static FramePipeline<byte[], BufferedImage> screenshots(
+            final ProxyEndpoint game, Analyse<BufferedImage> analyse) {
+        final FramePool pool = FramePool.getShared();
+        FramePipeline<byte[], BufferedImage> pipeline = new FramePipeline<byte[], BufferedImage>(
+                new Capture<byte[]>() {
+                    @Override
+                    public byte[] capture() {
+                        return game.send(new ProxyScreenshotMessage());
+                    }
+                },
+                new Decode<byte[], BufferedImage>() {
+                    @Override
+                    public BufferedImage decode(byte[] png) throws Exception {
+                        return pool.decodePng(png, 0, png.length);
+                    }
+                },
+                analyse, 2);
+        pipeline.setDiscard(new Discard<BufferedImage>() {
+            @Override
+            public void discard(BufferedImage frame) {
+                FramePool.recycle(frame);
+            }
+        });
+        return pipeline;
+    }
+
+    public void setDiscard(Discard<F> discard) {
+        this.discard = discard;
+    }
+
+    /**
+     * Minimum time between the starts of two captures, 0 (the default) to
+     * capture again as soon as the previous frame has arrived.
+     */
+    public void setCaptureInterval(long millis) {
+        captureInterval = millis;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        stages = new ArrayList<Stage>();
+        stages.add(new Stage("frame-capture") {
+            @Override
+            void step() throws Exception {
+                long started = System.nanoTime();
+                E frame = capture.capture();
+                if (frame == null) {
+                    Thread.sleep(RETRY_MILLIS);
+                    return;
+                }
+                captured.incrementAndGet();
+                encoded.offer(frame);
+
+                long wait = TimeUnit.MILLISECONDS.toNanos(captureInterval)
+                        - (System.nanoTime() - started);
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+        });
+        stages.add(new Stage("frame-decode") {
+            @Override
+            void step() throws Exception {
+                E frame = encoded.take(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    return;
+                }
+                F image = decode.decode(frame);
+                if (image != null) {
+                    discard(decoded.offer(image));
+                }
+            }
+        });
+        stages.add(new Stage("frame-analyse") {
+            @Override
+            void step() throws Exception {
+                F image = decoded.take(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (image == null) {
+                    return;
+                }
+                analyse.analyse(image);
+                analysed.incrementAndGet();
+            }
+        });
+        for (Stage stage : stages) {
+            stage.start();
+        }
+    }
+
+    /**
+     * Stop all stages and wait for them to finish. A frame being analysed
+     * is finished first; frames still waiting are discarded.
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Stage stage : stages) {
+            stage.interrupt();
+        }
+        for (Stage stage : stages) {
+            // the analysis may stop the pipeline itself
+            if (stage != Thread.currentThread()) {
+                stage.join();
+            }
+        }
+        stages = null;
+
+        while (encoded.poll() != null) {
+        }
+        F image;
+        while ((image = decoded.poll()) != null) {
+            discard(image);
+        }
+    }
+
+    // wait until the pipeline is stopped, e.g. to keep main() alive
+    public void join() throws InterruptedException {
+        List<Stage> current;
+        synchronized (this) {
+            current = stages;
+        }
+        if (current != null) {
+            for (Stage stage : current) {
+                stage.join();
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getCapturedCount() {
+        return captured.get();
+    }
+
+    public long getAnalysedCount() {
+        return analysed.get();
+    }
+
+    // frames captured or decoded but dropped because a later stage was busy
+    public long getDroppedCount() {
+        return encoded.getDroppedCount() + decoded.getDroppedCount();
+    }
+
+    private void discard(F frame) {
+        Discard<F> d = discard;
+        if (frame != null && d != null) {
+            d.discard(frame);
+        }
+    }
+
+    // one stage's thread, repeating step() until the pipeline is stopped
+    private abstract class Stage extends Thread {
+        Stage(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        abstract void step() throws Exception;
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    step();
+                } catch (InterruptedException e) {
+                    // stop() interrupts us, anything else is spurious
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -9,15 +9,14 @@
 package ab.utils;
 
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.UnknownHostException;
 
 import javax.imageio.ImageIO;
 
+import ab.server.FramePool;
 import ab.server.Proxy;
-import ab.server.proxy.message.ProxyScreenshotMessage;
 import ab.vision.VisionUtils;
 
 /* GameImageRecorder ------------------------------------------------------ */
@@ -58,40 +57,41 @@ public class GameImageRecorder {
         System.out.println("Waiting for proxy to connect");
         proxy.waitForClients(1);
 
-        // enter game loop
-        int frameCount = 0;
-        BufferedImage screenshot = null;
-        while (true) {
-            // capture screenshot
-            byte[] imageBytes = proxy.send(new ProxyScreenshotMessage());
-            BufferedImage image = null;
-            try {
-                image = ImageIO.read(new ByteArrayInputStream(imageBytes));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        // capture, decode and compare on separate threads; frames arriving
+        // while the previous one is still being saved are dropped
+        final String directory = args[0];
+        FramePipeline<byte[], BufferedImage> pipeline = FramePipeline.screenshots(proxy,
+                new FramePipeline.Analyse<BufferedImage>() {
+            int frameCount = 0;
+            BufferedImage screenshot = null;
 
-            // write image to disk
-            if ((screenshot == null) ||
-                (VisionUtils.numPixelsDifferent(screenshot, image) > 2048)) {
-                final String imgFilename = String.format(args[0] + File.separator + "img%04d.png", frameCount);
-                System.out.println("saving image to " + imgFilename);
-                try {
-                    ImageIO.write(image, "png", new File(imgFilename));
-                } catch (IOException e) {
-                    System.err.println("failed to save image " + imgFilename);
-                    e.printStackTrace();
-                }
+            @Override
+            public void analyse(BufferedImage image) {
+                // write image to disk
+                if ((screenshot == null) ||
+                    (VisionUtils.numPixelsDifferent(screenshot, image) > 2048)) {
+                    final String imgFilename = String.format(directory + File.separator + "img%04d.png", frameCount);
+                    System.out.println("saving image to " + imgFilename);
+                    try {
+                        ImageIO.write(image, "png", new File(imgFilename));
+                    } catch (IOException e) {
+                        System.err.println("failed to save image " + imgFilename);
+                        e.printStackTrace();
+                    }
 
-                // update frame count
-                screenshot = image;
-                frameCount += 1;
+                    // update frame count
+                    FramePool.recycle(screenshot);
+                    screenshot = image;
+                    frameCount += 1;
+                } else {
+                    FramePool.recycle(image);
+                }
             }
-
-            // sleep for a while
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) { }
-        }
+        });
+        pipeline.setCaptureInterval(100);
+        pipeline.start();
+        try {
+            pipeline.join();
+        } catch (InterruptedException e) { }
     }
 }
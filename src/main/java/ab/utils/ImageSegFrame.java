@@ -40,6 +40,8 @@ import javax.swing.PopupFactory;
 import javax.swing.SwingUtilities;
 
 import ab.demo.other.ActionRobot;
+import ab.server.ProxyEndpoint;
+import ab.server.proxy.message.ProxyRawScreenshotMessage;
 import ab.vision.VisionUtils;
 
 public class ImageSegFrame {
@@ -372,10 +374,10 @@ public class ImageSegFrame {
     			timegap = Long.parseLong(args[1]); 
     		}
     
-    	new ActionRobot();
+    	ProxyEndpoint game = new ActionRobot().getEndpoint();
     	BufferedImage screenshot = null;
     	ImageSegFrame frame = null;
-    	screenshot = ActionRobot.doScreenShot();
+    	screenshot = ActionRobot.doScreenShot(game);
     	frame = new ImageSegFrame(" Screenshots ", screenshot, null);
     	List<BufferedImage> images = new LinkedList<BufferedImage>();
     	long time;   
@@ -384,14 +386,15 @@ public class ImageSegFrame {
     	{
     		if(recordScreenshot){
     			time = System.nanoTime();
-    			screenshot = ActionRobot.doScreenShot();
+    			// every recorded frame must be a new capture, not a cached one
+    			screenshot = game.send(new ProxyRawScreenshotMessage());
     			images.add(screenshot);
 	    		Thread.sleep(timegap);
 	    		avg += (System.nanoTime() - time);
     		} 
     		else
     		{
-    			screenshot = ActionRobot.doScreenShot();
+    			screenshot = ActionRobot.doScreenShot(game);
     		}
     		frame.refresh(screenshot);
     		if(saveAndExit)
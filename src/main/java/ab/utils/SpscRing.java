@@ -0,0 +1,152 @@
+/*****************************************************************************
+ ** ANGRYBIRDS AI AGENT FRAMEWORK
+ ** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+ **  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+ ** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+ *****************************************************************************/
+package ab.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/* SpscRing --------------------------------------------------------------- */
+
+/**
+ * A bounded ring buffer between exactly one producer thread and one consumer
+ * thread. When the consumer falls behind, offer() drops the oldest element
+ * instead of blocking or growing, so the consumer always works on recent
+ * frames. The dropped element is handed back to the producer, which can
+ * recycle it.
+ *
+ * head is advanced by the consumer when it takes an element and by the
+ * producer when it drops one; whoever wins the compareAndSet owns the
+ * element. Only the producer writes slots, and only while the ring is not
+ * full, so the slot it writes is never the one the consumer is reading.
+ */
+public class SpscRing<T> {
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // the consumer while it is parked in take(), null otherwise
+    private volatile Thread waiter;
+
+    /**
+     * @param capacity maximum number of elements held, rounded up to a power
+     *        of two
+     */
+    public SpscRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        slots = new Object[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Append an element, dropping the oldest one if the ring is full.
+     * Producer thread only.
+     *
+     * @return the dropped element, or null if there was room
+     */
+    @SuppressWarnings("unchecked")
+    public T offer(T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        final long t = tail.get();
+        T stale = null;
+        while (stale == null) {
+            long h = head.get();
+            if (t - h < slots.length) {
+                break;
+            }
+            T oldest = (T) slots[(int) h & mask];
+            if (head.compareAndSet(h, h + 1)) {
+                stale = oldest;
+                dropped.incrementAndGet();
+            }
+        }
+        slots[(int) t & mask] = item;
+        // a full volatile write, so reading waiter below can't move above it
+        tail.set(t + 1);
+
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+        return stale;
+    }
+
+    /**
+     * Take the oldest element. Consumer thread only.
+     *
+     * @return the element, or null if the ring is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        while (true) {
+            long h = head.get();
+            if (h == tail.get()) {
+                return null;
+            }
+            T item = (T) slots[(int) h & mask];
+            // fails if the producer dropped this element in the meantime
+            if (head.compareAndSet(h, h + 1)) {
+                return item;
+            }
+        }
+    }
+
+    /**
+     * As poll(), waiting up to timeout for an element to arrive.
+     *
+     * @return the element, or null if none arrived in time
+     */
+    public T take(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        T item = poll();
+        while (item == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            waiter = Thread.currentThread();
+            // recheck after publishing ourselves, offer() may have missed us
+            item = poll();
+            if (item == null) {
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    waiter = null;
+                    throw new InterruptedException();
+                }
+                item = poll();
+            }
+            waiter = null;
+        }
+        return item;
+    }
+
+    // approximate while the other thread is active
+    public int size() {
+        long h = head.get();
+        return (int) Math.max(0, Math.min(slots.length, tail.get() - h));
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    // number of elements offer() has dropped so far
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
@@ -9,14 +9,14 @@
 
 package ab.utils;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
 
-import javax.imageio.ImageIO;
-
-import ab.server.Proxy;
-import ab.server.proxy.message.ProxyScreenshotMessage;
+import ab.server.FrameCache;
+import ab.server.FramePool;
+import ab.server.ProxyEndpoint;
+import ab.server.proxy.message.ProxyRegionScreenshotMessage;
+import ab.vision.FrameBuffer;
 import ab.vision.GameStateExtractor;
 import ab.vision.GameStateExtractor.GameState;
 
@@ -26,52 +26,55 @@ public class StateUtil {
      * Get the current game state
      * @return GameState: the current state 
      * */
-	public static  GameState  getGameState(Proxy proxy)
+	public static  GameState  getGameState(ProxyEndpoint proxy)
 	{
-		 byte[] imageBytes = proxy.send(new ProxyScreenshotMessage());
-		
-	        BufferedImage image = null;
-	        try {
-	            image = ImageIO.read(new ByteArrayInputStream(imageBytes));
-	        } catch (IOException e) {
-	          
-	        }
+	        FrameBuffer frame = probe(proxy, GameStateExtractor.STATE_REGIONS, true);
 	        GameStateExtractor gameStateExtractor = new GameStateExtractor();
-	        GameStateExtractor.GameState state = gameStateExtractor.getGameState(image);
-		  return state;
+		  return gameStateExtractor.getGameState(frame);
 	}
 
-	private static int _getScore(Proxy proxy)
+	private static int _getScore(ProxyEndpoint proxy)
 	{
-		byte[] imageBytes = proxy.send(new ProxyScreenshotMessage());
+		// getScore compares consecutive reads to see whether the score is
+		// still counting up, so they must never share a cached frame
+		FrameBuffer frame = probe(proxy, GameStateExtractor.STATE_AND_SCORE_REGIONS, false);
         int score = -1;
 
-		BufferedImage image = null;
-	    try {
-	           image = ImageIO.read(new ByteArrayInputStream(imageBytes));
-	        } 
-	    catch (IOException e) {
-	           e.printStackTrace();
-	        }
-	    
         GameStateExtractor gameStateExtractor = new GameStateExtractor();
-        GameState state = gameStateExtractor.getGameState(image);
+        GameState state = gameStateExtractor.getGameState(frame);
         if (state == GameState.PLAYING)
-        	score = gameStateExtractor.getScoreInGame(image);
+        	score = gameStateExtractor.getScoreInGame(frame);
         else
         	if(state == GameState.WON)
-        		score = gameStateExtractor.getScoreEndGame(image);
+        		score = gameStateExtractor.getScoreEndGame(frame);
        if(score == -1)
     	   System.out.println(" Game score is unavailable "); 	   
 		return score;
 	}
+	/**
+	 * Fetch just the given regions, which is all the state and score checks
+	 * look at, or reuse the cached full frame if allowed and still valid.
+	 * The pixels are read into a FrameBuffer once for all checks, so the
+	 * image, a region image or our lease on the cached frame, goes straight
+	 * back to the shared FramePool.
+	 */
+	private static FrameBuffer probe(ProxyEndpoint proxy, Rectangle[] regions, boolean cached)
+	{
+		FrameCache cache = cached ? proxy.getFrameCache() : null;
+		BufferedImage image = (cache == null) ? null : cache.getCachedFrame();
+		if (image == null)
+			image = proxy.send(new ProxyRegionScreenshotMessage(FramePool.getShared(), regions));
+		FrameBuffer frame = new FrameBuffer(image);
+		FramePool.recycle(image);
+		return frame;
+	}
 	/**
 	 * The method checks the score every second, and return when the score is stable (not flashing).
 	 * 
 	 * @return score: the current score.
 	 * 
 	 * */
-	public static int getScore(Proxy proxy)
+	public static int getScore(ProxyEndpoint proxy)
 	{
 
 		int current_score = -1;
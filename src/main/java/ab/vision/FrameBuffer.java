@@ -0,0 +1,164 @@
+/*****************************************************************************
+ ** ANGRYBIRDS AI AGENT FRAMEWORK
+ ** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+ **  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+ ** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+ *****************************************************************************/
+
+package ab.vision;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+import ab.server.SharedFrameRing;
+
+/* FrameBuffer ------------------------------------------------------------ */
+
+/**
+ * The pixels of one screenshot as a flat array of packed RGB values, read
+ * out of the BufferedImage once so that the vision stages can index it
+ * directly instead of calling getRGB(x, y) per pixel. Pixel (x, y) is at
+ * pixels[offset + y * stride + x] and holds the same value getRGB(x, y)
+ * would return (opaque alpha in the top byte).
+ *
+ * A region() is a view onto the same array, so a FrameBuffer must not be
+ * reloaded while views of it are in use.
+ */
+public class FrameBuffer {
+
+	private int[] pixels;
+	private int offset;
+	private int width;
+	private int height;
+	private int stride;
+
+	// an empty buffer to be filled with load()
+	public FrameBuffer(int width, int height) {
+		this(new int[width * height], 0, width, height, width);
+	}
+
+	// read the pixels of the given image
+	public FrameBuffer(BufferedImage image) {
+		this(image.getWidth(), image.getHeight());
+		load(image);
+	}
+
+	// wrap existing pixels, pixel (x, y) is pixels[offset + y * stride + x]
+	public FrameBuffer(int[] pixels, int offset, int width, int height, int stride) {
+		this.pixels = pixels;
+		this.offset = offset;
+		this.width = width;
+		this.height = height;
+		this.stride = stride;
+	}
+
+	/**
+	 * Replace the contents with the pixels of the given image, reusing the
+	 * array when it is large enough. Integer RGB images are copied row by
+	 * row straight out of their raster; anything else goes through a single
+	 * bulk getRGB.
+	 */
+	public void load(BufferedImage image) {
+		width = image.getWidth();
+		height = image.getHeight();
+		stride = width;
+		offset = 0;
+		if (pixels.length < width * height)
+			pixels = new int[width * height];
+
+		int type = image.getType();
+		if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+				&& image.getRaster().getDataBuffer() instanceof DataBufferInt
+				&& image.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+			int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) image
+					.getSampleModel();
+			int scan = sm.getScanlineStride();
+			int base = sm.getOffset(-image.getRaster().getSampleModelTranslateX(),
+					-image.getRaster().getSampleModelTranslateY());
+			// TYPE_INT_RGB leaves the alpha byte undefined, getRGB reports it opaque
+			int alpha = (type == BufferedImage.TYPE_INT_RGB) ? 0xff000000 : 0;
+			for (int y = 0; y < height; y++) {
+				int src = base + y * scan;
+				int dst = y * width;
+				if (alpha == 0) {
+					System.arraycopy(data, src, pixels, dst, width);
+				} else {
+					for (int x = 0; x < width; x++)
+						pixels[dst + x] = data[src + x] | alpha;
+				}
+			}
+		} else {
+			image.getRGB(0, 0, width, height, pixels, 0, width);
+		}
+	}
+
+	/**
+	 * Replace the contents with the newest frame of a shared frame ring,
+	 * copied in bulk straight from the mapped file with no image between.
+	 * 
+	 * @return the frame's sequence number, -1 if nothing was published yet
+	 */
+	public long load(SharedFrameRing ring) {
+		width = ring.getWidth();
+		height = ring.getHeight();
+		stride = width;
+		offset = 0;
+		if (pixels.length < width * height)
+			pixels = new int[width * height];
+		long n = ring.read(pixels);
+		// the ring holds 0x00RRGGBB, getRGB reports the pixels opaque
+		for (int i = 0; i < width * height; i++)
+			pixels[i] |= 0xff000000;
+		return n;
+	}
+
+	// a view of the given rectangle, sharing this buffer's pixels
+	public FrameBuffer region(Rectangle r) {
+		return region(r.x, r.y, r.width, r.height);
+	}
+
+	public FrameBuffer region(int x, int y, int w, int h) {
+		if (x < 0 || y < 0 || w < 0 || h < 0 || x + w > width || y + h > height)
+			throw new IllegalArgumentException("region " + x + "," + y + " "
+					+ w + "x" + h + " outside " + width + "x" + height + " frame");
+		return new FrameBuffer(pixels, offset + y * stride + x, w, h, stride);
+	}
+
+	public int getRGB(int x, int y) {
+		return pixels[offset + y * stride + x];
+	}
+
+	// the backing array, index it with getOffset() and getStride()
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getStride() {
+		return stride;
+	}
+
+	// copy the pixels into a new TYPE_INT_RGB image, e.g. for drawing
+	public BufferedImage toImage() {
+		BufferedImage image = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, width, height, pixels, offset, stride);
+		return image;
+	}
+}
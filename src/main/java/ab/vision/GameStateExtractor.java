@@ -25,19 +25,35 @@ public class GameStateExtractor {
 		 UNKNOWN, MAIN_MENU, EPISODE_MENU, LEVEL_SELECTION, LOADING, PLAYING, WON, LOST
 	}
 
+	// screen regions examined by getGameState, getScoreInGame and
+	// getScoreEndGame; nothing outside them is ever read
+	public static final Rectangle MENU_REGION = new Rectangle(636, 24, 192, 26);
+	public static final Rectangle WON_REGION = new Rectangle(467, 350, 61, 60);
+	public static final Rectangle LOST_REGION = new Rectangle(320, 112, 192, 26);
+	public static final Rectangle SCORE_IN_GAME_REGION = new Rectangle(632, 21, 200, 32);
+	public static final Rectangle SCORE_END_GAME_REGION = new Rectangle(370, 265, 100, 32);
+
+	public static final Rectangle[] STATE_REGIONS = { MENU_REGION, WON_REGION, LOST_REGION };
+	public static final Rectangle[] STATE_AND_SCORE_REGIONS = { MENU_REGION, WON_REGION,
+			LOST_REGION, SCORE_IN_GAME_REGION, SCORE_END_GAME_REGION };
+
     static int repeatCount = 0;
     static int prevScore = 0;
     static boolean saved = false;
     
-	// images for determining game state
-	private static BufferedImage _mainmenu = null;
-	private static BufferedImage _episodemenu = null;
-	private static BufferedImage _levelselection = null;
-	private static BufferedImage _loading = null;
-	private static BufferedImage _loading2 = null;
-	private static BufferedImage _gamewon1 = null;
-	private static BufferedImage _gamewon2 = null;
-	private static BufferedImage _gamelost = null;
+	// set once every image below is loaded; a failed load is retried by
+	// the next extractor
+	private static volatile boolean loaded = false;
+
+	// images for determining game state, read into FrameBuffers once
+	private static FrameBuffer _mainmenu = null;
+	private static FrameBuffer _episodemenu = null;
+	private static FrameBuffer _levelselection = null;
+	private static FrameBuffer _loading = null;
+	private static FrameBuffer _loading2 = null;
+	private static FrameBuffer _gamewon1 = null;
+	private static FrameBuffer _gamewon2 = null;
+	private static FrameBuffer _gamelost = null;
 
 	// images for classifying end game score
 	private static BufferedImage _endGame0 = null;
@@ -61,57 +77,71 @@ public class GameStateExtractor {
 
 	// create a game state extractor and load subimages
 	public GameStateExtractor() {
-		try {
-			_mainmenu = ImageIO.read(getClass().getResource(
-					"resources/mainmenu.png"));
-			_episodemenu = ImageIO.read(getClass().getResource(
-					"resources/episodemenu.png"));
-			_levelselection = ImageIO.read(getClass().getResource(
-					"resources/levelselection.png"));
-			_loading = ImageIO.read(getClass().getResource(
-					"resources/loading.png"));
-			_loading2 = ImageIO.read(getClass().getResource(
-					"resources/loading2.png"));
-			_gamewon1 = ImageIO.read(getClass().getResource(
-					"resources/gamewon1.png"));
-			_gamewon2 = ImageIO.read(getClass().getResource(
-					"resources/gamewon2.png"));
-			_gamelost = ImageIO.read(getClass().getResource(
-					"resources/gamelost.png"));
-			_endGame0 = ImageIO.read(getClass().getResource(
-					"resources/0endScreen.png"));
-			_endGame1 = ImageIO.read(getClass().getResource(
-					"resources/1endScreen.png"));
-			_endGame2 = ImageIO.read(getClass().getResource(
-					"resources/2endScreen.png"));
-			_endGame3 = ImageIO.read(getClass().getResource(
-					"resources/3endScreen.png"));
-			_endGame4 = ImageIO.read(getClass().getResource(
-					"resources/4endScreen.png"));
-			_endGame5 = ImageIO.read(getClass().getResource(
-					"resources/5endScreen.png"));
-			_endGame6 = ImageIO.read(getClass().getResource(
-					"resources/6endScreen.png"));
-			_endGame7 = ImageIO.read(getClass().getResource(
-					"resources/7endScreen.png"));
-			_endGame8 = ImageIO.read(getClass().getResource(
-					"resources/8endScreen.png"));
-			_endGame9 = ImageIO.read(getClass().getResource(
-					"resources/9endScreen.png"));
-
-		} catch (IOException e) {
-			System.err.println("failed to load resources");
-			e.printStackTrace();
+		// the images are static, only the first extractor has to load them;
+		// extractors created meanwhile on other threads wait for it
+		if (loaded)
+			return;
+		synchronized (GameStateExtractor.class) {
+			if (loaded)
+				return;
+			try {
+				_mainmenu = new FrameBuffer(ImageIO.read(getClass().getResource(
+						"resources/mainmenu.png")));
+				_episodemenu = new FrameBuffer(ImageIO.read(getClass().getResource(
+						"resources/episodemenu.png")));
+				_levelselection = new FrameBuffer(ImageIO.read(getClass().getResource(
+						"resources/levelselection.png")));
+				_loading = new FrameBuffer(ImageIO.read(getClass().getResource(
+						"resources/loading.png")));
+				_loading2 = new FrameBuffer(ImageIO.read(getClass().getResource(
+						"resources/loading2.png")));
+				_gamewon1 = new FrameBuffer(ImageIO.read(getClass().getResource(
+						"resources/gamewon1.png")));
+				_gamewon2 = new FrameBuffer(ImageIO.read(getClass().getResource(
+						"resources/gamewon2.png")));
+				_gamelost = new FrameBuffer(ImageIO.read(getClass().getResource(
+						"resources/gamelost.png")));
+				_endGame0 = ImageIO.read(getClass().getResource(
+						"resources/0endScreen.png"));
+				_endGame1 = ImageIO.read(getClass().getResource(
+						"resources/1endScreen.png"));
+				_endGame2 = ImageIO.read(getClass().getResource(
+						"resources/2endScreen.png"));
+				_endGame3 = ImageIO.read(getClass().getResource(
+						"resources/3endScreen.png"));
+				_endGame4 = ImageIO.read(getClass().getResource(
+						"resources/4endScreen.png"));
+				_endGame5 = ImageIO.read(getClass().getResource(
+						"resources/5endScreen.png"));
+				_endGame6 = ImageIO.read(getClass().getResource(
+						"resources/6endScreen.png"));
+				_endGame7 = ImageIO.read(getClass().getResource(
+						"resources/7endScreen.png"));
+				_endGame8 = ImageIO.read(getClass().getResource(
+						"resources/8endScreen.png"));
+				_endGame9 = ImageIO.read(getClass().getResource(
+						"resources/9endScreen.png"));
+				// publish the images, readers of the flag see them all
+				loaded = true;
+
+			} catch (IOException e) {
+				System.err.println("failed to load resources");
+				e.printStackTrace();
+			}
 		}
 	}
 
 	public GameState getGameState(BufferedImage screenshot) {
+		return getGameState(new FrameBuffer(screenshot));
+	}
+
+	public GameState getGameState(FrameBuffer screenshot) {
 
 		// pixel colour deviation threshold for valid detection
 		final int avgColourThreshold = 5;
 
 		// check for main menu or episode menu or level selection
-		BufferedImage wnd = screenshot.getSubimage(636, 24, 192, 26);
+		FrameBuffer wnd = screenshot.region(MENU_REGION);
 		
 
 		int numBytes = 3 * wnd.getWidth() * wnd.getHeight();
@@ -131,7 +161,7 @@ public class GameStateExtractor {
 			return GameState.LOADING;
 		}
 		// otherwise check for end game or playing
-		wnd = screenshot.getSubimage(467, 350, 61, 60);
+		wnd = screenshot.region(WON_REGION);
 		numBytes = 3 * wnd.getWidth() * wnd.getHeight();
 		if (VisionUtils.imageDifference(wnd, _gamewon1) < numBytes
 				* avgColourThreshold || VisionUtils.imageDifference(wnd, _gamewon2) < numBytes
@@ -140,7 +170,7 @@ public class GameStateExtractor {
 		}
 	
 
-		wnd = screenshot.getSubimage(320, 112, 192, 26);
+		wnd = screenshot.region(LOST_REGION);
 		numBytes = 3 * wnd.getWidth() * wnd.getHeight();
 		if (VisionUtils.imageDifference(wnd, _gamelost) < numBytes
 				* avgColourThreshold) {
@@ -151,18 +181,22 @@ public class GameStateExtractor {
 	}
 
 	public int getScoreInGame(BufferedImage screenshot) {
+		return getScoreInGame(new FrameBuffer(screenshot));
+	}
+
+	public int getScoreInGame(FrameBuffer screenshot) {
 		// crop score image
-		BufferedImage scoreImage = screenshot.getSubimage(632, 21, 200, 32);
+		FrameBuffer digits = screenshot.region(SCORE_IN_GAME_REGION);
 
 		// extract characters
-		int mask[][] = new int[scoreImage.getHeight()][scoreImage.getWidth()];
-		for (int y = 0; y < scoreImage.getHeight(); y++) {
-			for (int x = 0; x < scoreImage.getWidth(); x++) {
-				final int colour = scoreImage.getRGB(x, y);
+		int mask[][] = new int[digits.getHeight()][digits.getWidth()];
+		for (int y = 0; y < digits.getHeight(); y++) {
+			for (int x = 0; x < digits.getWidth(); x++) {
+				final int colour = digits.getRGB(x, y);
 				mask[y][x] = ((colour & 0x00ffffff) == 0x00ffffff) ? 1 : -1;
 			}
 		}
-		scoreImage = VisionUtils.int2image(mask);
+		BufferedImage scoreImage = VisionUtils.int2image(mask);
 		mask = VisionUtils.findConnectedComponents(mask);
 		Rectangle[] letters = VisionUtils.findBoundingBoxes(mask);
 		Arrays.sort(letters, new RectLeftOf());
@@ -231,8 +265,12 @@ public class GameStateExtractor {
 	}
 
 	public int getScoreEndGame(BufferedImage screenshot) {
+		return getScoreEndGame(new FrameBuffer(screenshot));
+	}
+
+	public int getScoreEndGame(FrameBuffer screenshot) {
 		// crop score image
-		BufferedImage scoreImage = screenshot.getSubimage(370, 265, 100, 32);
+		FrameBuffer digits = screenshot.region(SCORE_END_GAME_REGION);
 	
 		
 
@@ -246,14 +284,14 @@ public class GameStateExtractor {
 		
         
 		// extract characters
-		int mask[][] = new int[scoreImage.getHeight()][scoreImage.getWidth()];
-		for (int y = 0; y < scoreImage.getHeight(); y++) {
-			for (int x = 0; x < scoreImage.getWidth(); x++) {
-				final int colour = scoreImage.getRGB(x, y);
+		int mask[][] = new int[digits.getHeight()][digits.getWidth()];
+		for (int y = 0; y < digits.getHeight(); y++) {
+			for (int x = 0; x < digits.getWidth(); x++) {
+				final int colour = digits.getRGB(x, y);
 				mask[y][x] = (((colour & 0x00ff0000) >> 16) > 192) ? 1 : -1;
 			}
 		}
-		scoreImage = VisionUtils.int2image(mask);
+		BufferedImage scoreImage = VisionUtils.int2image(mask);
 		mask = VisionUtils.findConnectedComponents(mask);
 		Rectangle[] letters = VisionUtils.findBoundingBoxes(mask);
 		Arrays.sort(letters, new RectLeftOf());
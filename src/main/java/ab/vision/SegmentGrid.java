@@ -0,0 +1,150 @@
+/*****************************************************************************
+ ** ANGRYBIRDS AI AGENT FRAMEWORK
+ ** Copyright (c) 2014,XiaoYu (Gary) Ge, Stephen Gould,Jochen Renz
+ **  Sahan Abeyasinghe, Jim Keys,   Andrew Wang, Peng Zhang
+ ** All rights reserved.
+**This work is licensed under the terms of the GNU Affero General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+**To view a copy of this license, visit http://www.gnu.org/licenses/
+ *****************************************************************************/
+
+package ab.vision;
+
+import java.awt.Rectangle;
+
+/* SegmentGrid ------------------------------------------------------------ */
+
+/**
+ * A uniform grid over the bounding boxes of VisionMBR's segments, with one
+ * grid per colour code, so that finding the boxes of a colour near a region
+ * only looks at the cells the region covers instead of every segment.
+ *
+ * The grid of a colour is built the first time it is queried. Each cell
+ * lists the segments whose box touches it in increasing segment order.
+ * Boxes are expected not to change afterwards.
+ */
+class SegmentGrid {
+
+	// dilate by half the box's size plus one instead of a fixed amount
+	static final int HALF = -1;
+
+	private static final int CELL = 32;
+
+	private final int _colours[];
+	private final Rectangle _boxes[];
+	private final int _gridWidth;
+	private final int _gridHeight;
+
+	// per colour: first entry of each cell (plus an end marker), the entries
+	// and the largest box width and height, null until the colour is queried
+	private final int _cellStart[][] = new int[512][];
+	private final int _entries[][] = new int[512][];
+	private final int _maxWidth[] = new int[512];
+	private final int _maxHeight[] = new int[512];
+
+	SegmentGrid(int width, int height, int colours[], Rectangle boxes[]) {
+		_colours = colours;
+		_boxes = boxes;
+		_gridWidth = (width + CELL - 1) / CELL;
+		_gridHeight = (height + CELL - 1) / CELL;
+	}
+
+	/**
+	 * Find the first segment after the given one whose colour is one of
+	 * colours and whose box, dilated by (dx, dy), intersects r. dx and dy
+	 * are pixels or HALF, as in VisionUtils.dialateRectangle(box, dx, dy).
+	 *
+	 * @return the segment number, or -1 if there is none
+	 */
+	int next(int colours[], Rectangle r, int dx, int dy, int after) {
+		int best = Integer.MAX_VALUE;
+		for (int c : colours) {
+			if (_cellStart[c] == null)
+				build(c);
+			final int cellStart[] = _cellStart[c];
+			final int entries[] = _entries[c];
+			if (entries.length == 0)
+				continue;
+
+			// any box that can reach r after dilation touches these cells
+			final int ex = (dx == HALF) ? _maxWidth[c] / 2 + 1 : dx;
+			final int ey = (dy == HALF) ? _maxHeight[c] / 2 + 1 : dy;
+			final int cx0 = cell(r.x - ex, _gridWidth);
+			final int cx1 = cell(r.x + r.width - 1 + ex, _gridWidth);
+			final int cy0 = cell(r.y - ey, _gridHeight);
+			final int cy1 = cell(r.y + r.height - 1 + ey, _gridHeight);
+
+			for (int cy = cy0; cy <= cy1; cy++) {
+				for (int cx = cx0; cx <= cx1; cx++) {
+					final int cell = cy * _gridWidth + cx;
+					for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+						final int m = entries[i];
+						if (m >= best)
+							break;
+						if (m <= after)
+							continue;
+						final Rectangle box = _boxes[m];
+						if (r.intersects(VisionUtils.dialateRectangle(box,
+								(dx == HALF) ? box.width / 2 + 1 : dx,
+								(dy == HALF) ? box.height / 2 + 1 : dy))) {
+							best = m;
+							break;
+						}
+					}
+				}
+			}
+		}
+		return (best == Integer.MAX_VALUE) ? -1 : best;
+	}
+
+	// the dilated box of segment m, as used by next()
+	Rectangle dilate(int m, int dx, int dy) {
+		final Rectangle box = _boxes[m];
+		return VisionUtils.dialateRectangle(box,
+				(dx == HALF) ? box.width / 2 + 1 : dx,
+				(dy == HALF) ? box.height / 2 + 1 : dy);
+	}
+
+	// grid cell of pixel coordinate v, clamped to the grid
+	private static int cell(int v, int cells) {
+		if (v < 0)
+			return 0;
+		return Math.min(v / CELL, cells - 1);
+	}
+
+	// bucket the boxes of one colour into cells, counting first
+	private void build(int colour) {
+		final int cells = _gridWidth * _gridHeight;
+		final int start[] = new int[cells + 1];
+		int maxWidth = 0, maxHeight = 0;
+
+		for (int n = 0; n < _colours.length; n++) {
+			if (_colours[n] != colour)
+				continue;
+			final Rectangle box = _boxes[n];
+			maxWidth = Math.max(maxWidth, box.width);
+			maxHeight = Math.max(maxHeight, box.height);
+			for (int cy = cell(box.y, _gridHeight); cy <= cell(box.y + box.height - 1, _gridHeight); cy++)
+				for (int cx = cell(box.x, _gridWidth); cx <= cell(box.x + box.width - 1, _gridWidth); cx++)
+					start[cy * _gridWidth + cx + 1]++;
+		}
+		for (int i = 0; i < cells; i++)
+			start[i + 1] += start[i];
+
+		final int entries[] = new int[start[cells]];
+		final int fill[] = new int[cells];
+		System.arraycopy(start, 0, fill, 0, cells);
+		for (int n = 0; n < _colours.length; n++) {
+			if (_colours[n] != colour)
+				continue;
+			final Rectangle box = _boxes[n];
+			for (int cy = cell(box.y, _gridHeight); cy <= cell(box.y + box.height - 1, _gridHeight); cy++)
+				for (int cx = cell(box.x, _gridWidth); cx <= cell(box.x + box.width - 1, _gridWidth); cx++)
+					entries[fill[cy * _gridWidth + cx]++] = n;
+		}
+
+		_entries[colour] = entries;
+		_maxWidth[colour] = maxWidth;
+		_maxHeight[colour] = maxHeight;
+		_cellStart[colour] = start;
+	}
+}
@@ -13,7 +13,6 @@ import java.awt.Color;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -24,9 +23,10 @@ import java.util.List;
 import javax.imageio.ImageIO;
 
 import Jama.Matrix;
-import ab.demo.other.ActionRobot;
+import ab.server.FramePool;
 import ab.server.Proxy;
-import ab.server.proxy.message.ProxyScreenshotMessage;
+import ab.server.ProxyEndpoint;
+import ab.utils.FramePipeline;
 import ab.utils.ImageSegFrame;
 
 /* TestVision ------------------------------------------------------------- */
@@ -36,6 +36,13 @@ public class ShowSeg implements Runnable {
 	private static List<Point> trajPoints;
 	public  static boolean useRealshape = false;
 	private static VisionRealShape vision;
+	// the game run() shows
+	private final ProxyEndpoint game;
+
+	public ShowSeg(ProxyEndpoint game) {
+		this.game = game;
+	}
+
 	static public Proxy getGameConnection(int port) {
 		Proxy proxy = null;
 		try {
@@ -61,15 +68,21 @@ public class ShowSeg implements Runnable {
 	}
 	
 	static public int[][] computeMetaInformation(BufferedImage screenshot) {
+		return computeMetaInformation(new FrameBuffer(screenshot));
+	}
+
+	static public int[][] computeMetaInformation(FrameBuffer screenshot) {
 		// image size
 		final int nHeight = screenshot.getHeight();
 		final int nWidth = screenshot.getWidth();
+		final int[] pixels = screenshot.getPixels();
 
 		// meta debugging information
 		int[][] meta = new int[nHeight][nWidth];
 		for (int y = 0; y < nHeight; y++) {
+			int row = screenshot.getOffset() + y * screenshot.getStride();
 			for (int x = 0; x < nWidth; x++) {
-				final int colour = screenshot.getRGB(x, y);
+				final int colour = pixels[row + x];
 				meta[y][x] = ((colour & 0x00e00000) >> 15)
 						| ((colour & 0x0000e000) >> 10)
 						| ((colour & 0x000000e0) >> 5);
@@ -191,33 +204,37 @@ public class ShowSeg implements Runnable {
 			
 			Proxy game = getGameConnection(9000);
 
-			while (true) {
-				// Capture an image
-				byte[] imageBytes = game.send(new ProxyScreenshotMessage());
-				try {
-					screenshot = ImageIO.read(new ByteArrayInputStream(
-							imageBytes));
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-				
-				// Analyze and show image
-				//screenshot = drawMBRs(screenshot);
-				screenshot = drawRealshape(screenshot);
-				if (frame == null) {
-					frame = new ImageSegFrame("Vision", screenshot,
-							null);
-				
-				} else {
-					frame.refresh(screenshot, null);
-				}
-				// sleep for 50ms
-				try {
-					Thread.sleep(50);
-				} catch (InterruptedException e) {
-					System.err.println("Thread Interrupted");
+			// capture, decode and analyse on separate threads
+			FramePipeline<byte[], BufferedImage> pipeline = FramePipeline.screenshots(game,
+					new FramePipeline.Analyse<BufferedImage>() {
+				ImageSegFrame frame = null;
+				// the pooled image on screen, recycled once replaced
+				BufferedImage shown = null;
+
+				@Override
+				public void analyse(BufferedImage screenshot) {
+					// Analyze and show image
+					//screenshot = drawMBRs(screenshot);
+					BufferedImage drawn = drawRealshape(screenshot);
+					if (frame == null) {
+						frame = new ImageSegFrame("Vision", drawn,
+								null);
+					
+					} else {
+						frame.refresh(drawn, null);
+					}
+					FramePool.recycle(shown);
+					shown = show(screenshot, drawn);
 				}
+			});
+			pipeline.setCaptureInterval(50);
+			pipeline.start();
+			try {
+				pipeline.join();
+			} catch (InterruptedException e) {
+				System.err.println("Thread Interrupted");
 			}
+			return;
 		}
 
 		// Get list of images to process
@@ -264,38 +281,54 @@ public class ShowSeg implements Runnable {
 
 		frame.close();
 	}
+	// the drawing is on screen now: a grey copy frees the pooled screenshot
+	// at once, otherwise it stays in use until the next frame replaces it
+	private static BufferedImage show(BufferedImage screenshot, BufferedImage drawn) {
+		if (drawn == screenshot)
+			return screenshot;
+		FramePool.recycle(screenshot);
+		return null;
+	}
 	//add for LoadLevel Agent
 
 	@Override
 	public void run() {
 		
-		ImageSegFrame frame = null;
-		BufferedImage screenshot = null;
-       	while (true) {
-			// capture an image
-		    screenshot = ActionRobot.doScreenShot();
-			// analyse and show image
-			//int[][] meta = computeMetaInformation(screenshot);
-		    
-		    if(!useRealshape)
-		    	screenshot = drawMBRs(screenshot);
-		    else
-		    	screenshot = drawRealshape(screenshot);
-		    
-			if (frame == null) {
-
-				frame = new ImageSegFrame("Image Segmentation", screenshot,
-						null);
-			} else {
-				frame.refresh(screenshot, null);
-			}
+		// capture, decode and analyse on separate threads; each decoded
+		// image is our own, drawRealshape draws on it
+		FramePipeline<byte[], BufferedImage> pipeline = FramePipeline.screenshots(game,
+				new FramePipeline.Analyse<BufferedImage>() {
+			ImageSegFrame frame = null;
+			// the pooled image on screen, recycled once replaced
+			BufferedImage shown = null;
+
+			@Override
+			public void analyse(BufferedImage screenshot) {
+				// analyse and show image
+				//int[][] meta = computeMetaInformation(screenshot);
+			    BufferedImage drawn;
+			    if(!useRealshape)
+			    	drawn = drawMBRs(screenshot);
+			    else
+			    	drawn = drawRealshape(screenshot);
+			    
+				if (frame == null) {
 
-			// sleep for 50ms
-			try {
-				Thread.sleep(50);
-			} catch (InterruptedException e) {
-				System.err.println(" Thread Interrupt");
+					frame = new ImageSegFrame("Image Segmentation", drawn,
+							null);
+				} else {
+					frame.refresh(drawn, null);
+				}
+				FramePool.recycle(shown);
+				shown = show(screenshot, drawn);
 			}
+		});
+		pipeline.setCaptureInterval(50);
+		pipeline.start();
+		try {
+			pipeline.join();
+		} catch (InterruptedException e) {
+			System.err.println(" Thread Interrupt");
 		}
 	}
 	
@@ -13,8 +13,12 @@ import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.util.List;
 
+import ab.server.FramePool;
+
 public class Vision {
 	private BufferedImage image;
+	// the screenshot's pixels, read once and shared by both detectors
+	private FrameBuffer frame = null;
 	private VisionMBR visionMBR = null;
 	private VisionRealShape visionRealShape = null;
 	
@@ -22,12 +26,39 @@ public class Vision {
 	{
 		this.image = image;
 	}
+
+	public Vision(FrameBuffer frame)
+	{
+		this.frame = frame;
+	}
+
+	public FrameBuffer getFrameBuffer()
+	{
+		if (frame == null)
+			frame = new FrameBuffer(image);
+		return frame;
+	}
+
+	/**
+	 * Hand the screenshot back to the FramePool it was taken from, if any.
+	 * Its pixels are read first, so the find methods keep working; only the
+	 * screenshot itself must not be used afterwards.
+	 */
+	public void release()
+	{
+		if (image != null)
+		{
+			getFrameBuffer();
+			FramePool.recycle(image);
+			image = null;
+		}
+	}
 	
 	public List<ABObject> findBirdsMBR()
 	{
 		if (visionMBR == null)
 		{
-			visionMBR = new VisionMBR(image);
+			visionMBR = new VisionMBR(getFrameBuffer());
 		} 
 		return visionMBR.findBirds();
 			
@@ -39,7 +70,7 @@ public class Vision {
 	{
 		if (visionMBR == null)
 		{
-			visionMBR = new VisionMBR(image);
+			visionMBR = new VisionMBR(getFrameBuffer());
 		}
 		return visionMBR.findBlocks();
 	}
@@ -48,7 +79,7 @@ public class Vision {
 	{
 		if(visionMBR == null)
 		{
-			visionMBR = new VisionMBR(image);
+			visionMBR = new VisionMBR(getFrameBuffer());
 		}
 		return visionMBR.findTNTs();
 	}
@@ -56,7 +87,7 @@ public class Vision {
 	{
 		if (visionMBR == null)
 		{
-			visionMBR = new VisionMBR(image);
+			visionMBR = new VisionMBR(getFrameBuffer());
 		}
 		return visionMBR.findPigs();
 	}
@@ -64,7 +95,7 @@ public class Vision {
 	{
 		if(visionRealShape == null)
 		{
-			visionRealShape = new VisionRealShape(image);
+			visionRealShape = new VisionRealShape(getFrameBuffer());
 		}
 		
 		return visionRealShape.findPigs();
@@ -73,7 +104,7 @@ public class Vision {
 	{
 		if(visionRealShape == null)
 		{
-			visionRealShape = new VisionRealShape(image);
+			visionRealShape = new VisionRealShape(getFrameBuffer());
 		}
 		
 		return visionRealShape.findBirds();
@@ -83,7 +114,7 @@ public class Vision {
 	{
 		if(visionRealShape == null)
 		{
-			visionRealShape = new VisionRealShape(image);
+			visionRealShape = new VisionRealShape(getFrameBuffer());
 		}
 		
 		return visionRealShape.findHills();
@@ -94,7 +125,7 @@ public class Vision {
 	{
 		if (visionMBR == null)
 		{
-			visionMBR = new VisionMBR(image);
+			visionMBR = new VisionMBR(getFrameBuffer());
 		}
 		return visionMBR.findSlingshotMBR();
 	}
@@ -102,7 +133,7 @@ public class Vision {
 	{
 		if (visionMBR == null)
 		{
-			visionMBR = new VisionMBR(image);
+			visionMBR = new VisionMBR(getFrameBuffer());
 		}
 		return visionMBR.findTrajPoints();
 	}
@@ -113,7 +144,7 @@ public class Vision {
 	{
 		if(visionRealShape == null)
 		{
-			visionRealShape = new VisionRealShape(image);
+			visionRealShape = new VisionRealShape(getFrameBuffer());
 		}
 		List<ABObject> allBlocks = visionRealShape.findObjects();
 		
@@ -122,7 +153,7 @@ public class Vision {
 	public VisionMBR getMBRVision()
 	{
 		if(visionMBR == null)
-			visionMBR = new VisionMBR(image);
+			visionMBR = new VisionMBR(getFrameBuffer());
 		return visionMBR;
 	}
 }
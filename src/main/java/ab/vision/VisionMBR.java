@@ -29,174 +29,87 @@ public class VisionMBR {
 	private int _nWidth; // width of the scene
 	public int _scene[][]; // quantized scene colours
 	private int _nSegments; // number of segments
-	private int _segments[][]; // connected components (0 to _nSegments)
+	private int _segments[]; // connected components (0 to _nSegments), indexed [y * _nWidth + x]
 	private int _colours[]; // colour for each segment
 	private Rectangle _boxes[]; // bounding box for each segment
+	private int _areas[]; // number of pixels in each segment
 	private int _regionThreshold = 10; // minimal pixels in a region
 
 	// create a vision object for processing a given screenshot
 	public VisionMBR(BufferedImage screenshot) {
+		this(new FrameBuffer(screenshot));
+	}
+
+	// create a vision object for a screenshot already read into a FrameBuffer
+	public VisionMBR(FrameBuffer screenshot) {
 
 		//Reset the ID counter for each segmentation
 		ABObject.resetCounter();
 		processScreenShot(screenshot);
 	}
 
+	// colours belonging to the slingshot, indexed by 3-bit colour code
+	private static final boolean[] SLING_COLOURS = colourSet(345, 418, 273,
+			281, 209, 346, 354, 282, 351);
+	private static final boolean[] STONE_COLOURS = colourSet(365);
+	private static final boolean[] ICE_COLOURS = colourSet(311, 247, 183);
+	private static final boolean[] WOOD_COLOURS = colourSet(481, 408, 417);
+
+	private long _visited[]; // pixels already flooded, one bit each
+	private int _stack[]; // pixels still to expand, as y * _nWidth + x
+	private SegmentGrid _grid = null; // spatial index over _boxes, built on first use
+
 	//find slingshot
 	//only return one rectangle
 	public Rectangle findSlingshotMBR() {
-		Rectangle obj;
-
-
-		Boolean ignorePixel[][] = new Boolean[_nHeight][_nWidth];
-
-		for (int i = 0; i < _nHeight; i++) {
-			for (int j = 0; j < _nWidth; j++) {
-				ignorePixel[i][j] = false;
-			}
-		}
+		clearVisited();
 
 		for (int i = 0; i < _nHeight; i++) {
 			for (int j = 0; j < _nWidth; j++) {
-				if ((_scene[i][j] != 345) || ignorePixel[i][j])
+				if ((_scene[i][j] != 345) || isVisited(i * _nWidth + j))
 					continue;
-				obj = new Rectangle(j, i, 0, 0);
-				LinkedList<Point> l = new LinkedList<Point>();
 
-				LinkedList<Point> pointsinRec = new LinkedList<Point>();
+				// flood fill the slingshot coloured pixels connected to the seed
+				Rectangle obj = flood(j, i, SLING_COLOURS);
 
-				l.add(new Point(j, i));
-				ignorePixel[i][j] = true;
-				while (true) {
-					if (l.isEmpty())
-						break;
-					Point p = l.pop();
-					// check if the colours of the adjacent points of p is
-					// belong to slingshot
-					
-					//check underneath pixel
-					if (p.y < _nHeight - 1)
-						if ((_scene[p.y + 1][p.x] == 345
-								|| _scene[p.y + 1][p.x] == 418
-								|| _scene[p.y + 1][p.x] == 273
-								|| _scene[p.y + 1][p.x] == 281
-								|| _scene[p.y + 1][p.x] == 209
-								|| _scene[p.y + 1][p.x] == 346
-								|| _scene[p.y + 1][p.x] == 354
-								|| _scene[p.y + 1][p.x] == 282 || _scene[p.y + 1][p.x] == 351)
-								&& !ignorePixel[p.y + 1][p.x]) {
-							l.add(new Point(p.x, p.y + 1));
-							obj.add(p.x, p.y + 1);
-							pointsinRec.add(new Point(p.x, p.y + 1));
-						}
-					
-					//check right pixel
-					if (p.x < _nWidth - 1)
-						if ((_scene[p.y][p.x + 1] == 345
-								|| _scene[p.y][p.x + 1] == 418
-								|| _scene[p.y][p.x + 1] == 346
-								|| _scene[p.y][p.x + 1] == 354
-								|| _scene[p.y][p.x + 1] == 273
-								|| _scene[p.y][p.x + 1] == 281
-								|| _scene[p.y][p.x + 1] == 209
-								|| _scene[p.y][p.x + 1] == 282 || _scene[p.y][p.x + 1] == 351)
-								&& !ignorePixel[p.y][p.x + 1]) {
-							l.add(new Point(p.x + 1, p.y));
-							obj.add(p.x + 1, p.y);
-							pointsinRec.add(new Point(p.x, p.y + 1));
-						}
-
-					//check upper pixel
-					if (p.y > 0)
-						if ((_scene[p.y - 1][p.x] == 345
-								|| _scene[p.y - 1][p.x] == 418
-								|| _scene[p.y - 1][p.x] == 346
-								|| _scene[p.y - 1][p.x] == 354
-								|| _scene[p.y - 1][p.x] == 273
-								|| _scene[p.y - 1][p.x] == 281
-								|| _scene[p.y - 1][p.x] == 209
-								|| _scene[p.y - 1][p.x] == 282 || _scene[p.y - 1][p.x] == 351)
-								&& !ignorePixel[p.y - 1][p.x]) {
-							l.add(new Point(p.x, p.y - 1));
-							obj.add(p.x, p.y - 1);
-							pointsinRec.add(new Point(p.x, p.y + 1));
-						}
-
-					//check left pixel
-					if (p.x > 0)
-						if ((_scene[p.y][p.x - 1] == 345
-								|| _scene[p.y][p.x - 1] == 418
-								|| _scene[p.y][p.x - 1] == 346
-								|| _scene[p.y][p.x - 1] == 354
-								|| _scene[p.y][p.x - 1] == 273
-								|| _scene[p.y][p.x - 1] == 281
-								|| _scene[p.y][p.x - 1] == 209
-								|| _scene[p.y][p.x - 1] == 282 || _scene[p.y][p.x - 1] == 351)
-								&& !ignorePixel[p.y][p.x - 1]) {
-							l.add(new Point(p.x - 1, p.y));
-							obj.add(p.x - 1, p.y);
-							pointsinRec.add(new Point(p.x, p.y + 1));
-						}
-
-					//ignore checked pixels
-					if (p.y < _nHeight - 1)
-						ignorePixel[p.y + 1][p.x] = true;
-					if (p.x < _nWidth - 1)
-						ignorePixel[p.y][p.x + 1] = true;
-					if (p.y > 0)
-						ignorePixel[p.y - 1][p.x] = true;
-					if (p.x > 0)
-						ignorePixel[p.y][p.x - 1] = true;
-
-				}
-				int[] hist = histogram(obj);
+				// the colours checked below, counted over the box before trimming
+				final int count345 = countColour(345, obj);
+				final int count64 = countColour(64, obj);
 
 				// abandon shelf underneath
 				if (obj.height > 10) {
-					Rectangle col = new Rectangle(obj.x, obj.y, 1, obj.height);
-					int[] histCol = histogram(col);
-				
+					// counted over the full height, before it may be cut below
+					int colCount = countInColumn(511, obj.x, obj.y, obj.height);
 
 					if (_scene[obj.y][obj.x] == 511
 							|| _scene[obj.y][obj.x] == 447) {
 						for (int m = obj.y; m < obj.y + obj.height; m++) {
-							if (_scene[m][obj.x] == 345
-									|| _scene[m][obj.x] == 418
-									|| _scene[m][obj.x] == 346
-									|| _scene[m][obj.x] == 354
-									|| _scene[m][obj.x] == 273
-									|| _scene[m][obj.x] == 281
-									|| _scene[m][obj.x] == 209
-									|| _scene[m][obj.x] == 282
-									|| _scene[m][obj.x] == 351) {
+							if (SLING_COLOURS[_scene[m][obj.x]]) {
 								obj.setSize(obj.width, m - obj.y);
 								break;
 							}
 						}
 					}
 
-					while (histCol[511] >= obj.height * 0.8) {
+					while (colCount >= obj.height * 0.8) {
 						obj.setBounds(obj.x + 1, obj.y, obj.width - 1,
 								obj.height);
-						col = new Rectangle(obj.x + 1, obj.y, 1, obj.height);
-						histCol = histogram(col);
+						colCount = countInColumn(511, obj.x + 1, obj.y, obj.height);
 					}
 
-					col = new Rectangle(obj.x + obj.width, obj.y, 1, obj.height);
-					histCol = histogram(col);
-					while (histCol[511] >= obj.height * 0.8 && obj.height > 10) {
+					colCount = countInColumn(511, obj.x + obj.width, obj.y, obj.height);
+					while (colCount >= obj.height * 0.8 && obj.height > 10) {
 						obj.setSize(obj.width - 1, obj.height);
-						col = new Rectangle(obj.x + obj.width, obj.y, 1,
+						colCount = countInColumn(511, obj.x + obj.width, obj.y,
 								obj.height);
-						histCol = histogram(col);
 					}
 				}
 
 				if (obj.width > obj.height)
 					continue;
 
-				if ((hist[345] > Math.max(32, 0.1 * obj.width * obj.height))
-						&& (hist[64] != 0)) {
+				if ((count345 > Math.max(32, 0.1 * obj.width * obj.height))
+						&& (count64 != 0)) {
 					obj.add(new Rectangle(obj.x - obj.width / 10, obj.y
 							- obj.height / 3, obj.width / 10 * 12,
 							obj.height / 3 * 4));
@@ -207,13 +120,151 @@ public class VisionMBR {
 		return null;
 	}
 
+	private boolean isVisited(int p) {
+		return (_visited[p >> 6] & (1L << p)) != 0;
+	}
+
+	private void setVisited(int p) {
+		_visited[p >> 6] |= 1L << p;
+	}
+
+	private void clearVisited() {
+		if (_visited == null) {
+			_visited = new long[(_nWidth * _nHeight + 63) >> 6];
+			_stack = new int[256];
+		} else {
+			Arrays.fill(_visited, 0);
+		}
+	}
+
+	/*
+	 * Flood fill the 4-connected pixels of the member colours from (x, y),
+	 * marking them visited, and return their bounding box the way the
+	 * detectors always measured it: Rectangle(x, y, 0, 0) grown with add(),
+	 * so it is one pixel short of covering the far edges.
+	 */
+	private Rectangle flood(int x0, int y0, boolean members[]) {
+		final int size = _nWidth * _nHeight;
+		int minX = x0, maxX = x0, minY = y0, maxY = y0;
+		int top = 0;
+		_stack[top++] = y0 * _nWidth + x0;
+		setVisited(y0 * _nWidth + x0);
+		while (top > 0) {
+			final int p = _stack[--top];
+			final int y = p / _nWidth;
+			final int x = p - y * _nWidth;
+
+			// check underneath, right, upper and left pixel
+			for (int k = 0; k < 4; k++) {
+				final int nx = (k == 1) ? x + 1 : (k == 3) ? x - 1 : x;
+				final int ny = (k == 0) ? y + 1 : (k == 2) ? y - 1 : y;
+				if (nx < 0 || nx >= _nWidth || ny < 0 || ny >= _nHeight)
+					continue;
+				final int q = ny * _nWidth + nx;
+				if (!members[_scene[ny][nx]] || isVisited(q))
+					continue;
+				setVisited(q);
+				if (top == _stack.length)
+					_stack = Arrays.copyOf(_stack, Math.min(size, top * 2));
+				_stack[top++] = q;
+				if (nx < minX) minX = nx;
+				if (nx > maxX) maxX = nx;
+				if (ny < minY) minY = ny;
+				if (ny > maxY) maxY = ny;
+			}
+		}
+		return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+	}
+
+	/*
+	 * Regions of the member colours grown from pixels of the seed colour,
+	 * leaving out specks and anything inside the score area.
+	 */
+	private List<Rectangle> findRegions(int seed, boolean members[]) {
+		ArrayList<Rectangle> objects = new ArrayList<Rectangle>();
+		clearVisited();
+
+		for (int i = 0; i < _nHeight; i++) {
+			final int row[] = _scene[i];
+			for (int j = 0; j < _nWidth; j++) {
+				if ((row[j] != seed) || isVisited(i * _nWidth + j))
+					continue;
+				Rectangle obj = flood(j, i, members);
+				if (obj.width * obj.height > _regionThreshold
+						&& !(new Rectangle(0, 0, 190, 55).contains(obj)))
+					objects.add(obj);
+			}
+		}
+		return objects;
+	}
+
+	private static boolean[] colourSet(int... codes) {
+		boolean set[] = new boolean[512];
+		for (int c : codes)
+			set[c] = true;
+		return set;
+	}
+
+	private SegmentGrid grid() {
+		if (_grid == null)
+			_grid = new SegmentGrid(_nWidth, _nHeight, _colours, _boxes);
+		return _grid;
+	}
+
+	/*
+	 * Grow bounds and obj by every segment after n of the given colours
+	 * whose box, dilated by (dx, dy), overlaps bounds, in segment order, and
+	 * mark them as used. A segment is checked against bounds as grown by
+	 * the segments before it, exactly like the loop over m = n + 1 ... the
+	 * detectors used to run, but only segments near bounds are looked at.
+	 */
+	private void mergeOverlapping(int n, int colours[], int dx, int dy,
+			Rectangle bounds, Rectangle obj, boolean ignore[]) {
+		final SegmentGrid grid = grid();
+		for (int m = grid.next(colours, bounds, dx, dy, n); m >= 0; m = grid
+				.next(colours, bounds, dx, dy, m)) {
+			bounds.add(grid.dilate(m, dx, dy));
+			obj.add(_boxes[m]);
+			ignore[m] = true;
+		}
+	}
+
+	// histogram(r)[colour] without building the histogram
+	private int countColour(int colour, Rectangle r) {
+		final int x0 = Math.max(r.x, 0);
+		final int x1 = Math.min(r.x + r.width, _nWidth);
+		final int y0 = Math.max(r.y, 0);
+		final int y1 = Math.min(r.y + r.height, _nHeight);
+		int n = 0;
+		for (int y = y0; y < y1; y++) {
+			final int[] row = _scene[y];
+			for (int x = x0; x < x1; x++) {
+				if (row[x] == colour)
+					n++;
+			}
+		}
+		return n;
+	}
+
+	// histogram(new Rectangle(x, y, 1, height))[colour]
+	private int countInColumn(int colour, int x, int y, int height) {
+		if ((x < 0) || (x >= _nWidth))
+			return 0;
+		final int y1 = Math.min(y + height, _nHeight);
+		int n = 0;
+		for (int m = Math.max(y, 0); m < y1; m++) {
+			if (_scene[m][x] == colour)
+				n++;
+		}
+		return n;
+	}
+
 	// find pigs in the current scene
 	public List<Rectangle> findPigsMBR() {
 		ArrayList<Rectangle> objects = new ArrayList<Rectangle>();
 
 		// find candidates
-		Boolean ignore[] = new Boolean[_nSegments];
-		Arrays.fill(ignore, false);
+		boolean ignore[] = new boolean[_nSegments];
 
 		for (int n = 0; n < _nSegments; n++) {
 			if ((_colours[n] != 376) || ignore[n])
@@ -222,32 +273,14 @@ public class VisionMBR {
 			// dilate bounding box of colour 376
 			Rectangle bounds = VisionUtils.dialateRectangle(_boxes[n],
 					_boxes[n].width / 2 + 1, _boxes[n].height / 2 + 1);
-			Rectangle obj = _boxes[n];
+			Rectangle obj = new Rectangle(_boxes[n]);
 
 			// look for overlapping bounding boxes of colour 376
-			for (int m = n + 1; m < _nSegments; m++) {
-				if (_colours[m] != 376)
-					continue;
-				final Rectangle bounds2 = VisionUtils.dialateRectangle(
-						_boxes[m], _boxes[m].width / 2 + 1,
-						_boxes[m].height / 2 + 1);
-				if (bounds.intersects(bounds2)) {
-					bounds.add(bounds2);
-					obj.add(_boxes[m]);
-					ignore[m] = true;
-				}
-			}
+			mergeOverlapping(n, new int[] { 376 }, SegmentGrid.HALF,
+					SegmentGrid.HALF, bounds, obj, ignore);
 
 			// look for overlapping bounding boxes of colour 250
-			Boolean bValidObject = false;
-			for (int m = 0; m < _nSegments; m++) {
-				if (_colours[m] != 250)
-					continue;
-				if (bounds.intersects(_boxes[m])) {
-					bValidObject = true;
-					break;
-				}
-			}
+			Boolean bValidObject = grid().next(new int[] { 250 }, bounds, 0, 0, -1) >= 0;
 
 			// add object if valid
 			if (bValidObject) {
@@ -266,8 +299,7 @@ public class VisionMBR {
 		ArrayList<Rectangle> objects = new ArrayList<Rectangle>();
 
 		// test for red birds (385, 488, 501)
-		Boolean ignore[] = new Boolean[_nSegments];
-		Arrays.fill(ignore, false);
+		boolean ignore[] = new boolean[_nSegments];
 
 		for (int n = 0; n < _nSegments; n++) {
 			if ((_colours[n] != 385) || ignore[n])
@@ -276,30 +308,19 @@ public class VisionMBR {
 			// dilate bounding box around colour 385
 			Rectangle bounds = VisionUtils.dialateRectangle(_boxes[n], 1,
 					_boxes[n].height / 2 + 1);
-			Rectangle obj = _boxes[n];
+			Rectangle obj = new Rectangle(_boxes[n]);
 
 			// look for overlapping bounding boxes of colour 385
-			for (int m = n + 1; m < _nSegments; m++) {
-				if (_colours[m] != 385)
-					continue;
-				final Rectangle bounds2 = VisionUtils.dialateRectangle(
-						_boxes[m], 1, _boxes[m].height / 2 + 1);
-				if (bounds.intersects(bounds2)) {
-					bounds.add(bounds2);
-					obj.add(_boxes[m]);
-					ignore[m] = true;
-				}
-			}
+			mergeOverlapping(n, new int[] { 385 }, 1, SegmentGrid.HALF,
+					bounds, obj, ignore);
 
 			// look for overlapping bounding boxes of colours 488 and 501
 			Boolean bValidObject = false;
-			for (int m = 0; m < _nSegments; m++) {
-				if ((_colours[m] != 488) && (_colours[m] != 501))
-					continue;
-				if (bounds.intersects(_boxes[m])) {
-					obj.add(_boxes[m]);
-					bValidObject = true;
-				}
+			final int[] beak = { 488, 501 };
+			for (int m = grid().next(beak, bounds, 0, 0, -1); m >= 0; m = grid()
+					.next(beak, bounds, 0, 0, m)) {
+				obj.add(_boxes[m]);
+				bValidObject = true;
 			}
 
 			if (bValidObject) {
@@ -315,8 +336,7 @@ public class VisionMBR {
 		ArrayList<Rectangle> objects = new ArrayList<Rectangle>();
 
 		// test for blue birds (238)
-		Boolean ignore[] = new Boolean[_nSegments];
-		Arrays.fill(ignore, false);
+		boolean ignore[] = new boolean[_nSegments];
 
 		for (int n = 0; n < _nSegments; n++) {
 			if ((_colours[n] != 238) || ignore[n])
@@ -325,43 +345,26 @@ public class VisionMBR {
 			// dilate bounding box around colour 238
 			Rectangle bounds = VisionUtils.dialateRectangle(_boxes[n], 1,
 					_boxes[n].height / 2 + 1);
-			Rectangle obj = _boxes[n];
+			Rectangle obj = new Rectangle(_boxes[n]);
 
 			// look for overlapping bounding boxes of colours 238, 165, 280,
 			// 344, 488, 416
-			for (int m = n + 1; m < _nSegments; m++) {
-				if ((_colours[m] != 238) && (_colours[m] != 165)
-						&& (_colours[m] != 280) && (_colours[m] != 344)
-						&& (_colours[m] != 488) && (_colours[m] != 416))
-					continue;
-				final Rectangle bounds2 = VisionUtils.dialateRectangle(
-						_boxes[m], 2, _boxes[m].height / 2 + 1);
-				if (bounds.intersects(bounds2)) {
-					bounds.add(bounds2);
-					obj.add(_boxes[m]);
-					ignore[m] = true;
-				}
-			}
+			mergeOverlapping(n, new int[] { 238, 165, 280, 344, 488, 416 }, 2,
+					SegmentGrid.HALF, bounds, obj, ignore);
 
-			for (int m = n + 1; m < _nSegments; m++) {
-				if (_colours[m] != 238)
-					continue;
-				final Rectangle bounds2 = VisionUtils.dialateRectangle(
-						_boxes[m], 2, _boxes[m].height / 2 + 1);
-				if (bounds.intersects(bounds2)) {
-					ignore[m] = true;
-				}
+			final int[] blue = { 238 };
+			for (int m = grid().next(blue, bounds, 2, SegmentGrid.HALF, n); m >= 0; m = grid()
+					.next(blue, bounds, 2, SegmentGrid.HALF, m)) {
+				ignore[m] = true;
 			}
 
 			// look for overlapping bounding boxes of colours 488
 			Boolean bValidObject = false;
-			for (int m = 0; m < _nSegments; m++) {
-				if (_colours[m] != 488)
-					continue;
-				if (bounds.intersects(_boxes[m])) {
-					obj.add(_boxes[m]);
-					bValidObject = true;
-				}
+			final int[] beak = { 488 };
+			for (int m = grid().next(beak, bounds, 0, 0, -1); m >= 0; m = grid()
+					.next(beak, bounds, 0, 0, m)) {
+				obj.add(_boxes[m]);
+				bValidObject = true;
 			}
 
 			if (bValidObject && (obj.width > 3)) {
@@ -377,8 +380,7 @@ public class VisionMBR {
 		ArrayList<Rectangle> objects = new ArrayList<Rectangle>();
 
 		// test for blue birds (497)
-		Boolean ignore[] = new Boolean[_nSegments];
-		Arrays.fill(ignore, false);
+		boolean ignore[] = new boolean[_nSegments];
 
 		for (int n = 0; n < _nSegments; n++) {
 			if ((_colours[n] != 497) || ignore[n])
@@ -386,20 +388,10 @@ public class VisionMBR {
 
 			// dilate bounding box around colour 497
 			Rectangle bounds = VisionUtils.dialateRectangle(_boxes[n], 2, 2);
-			Rectangle obj = _boxes[n];
+			Rectangle obj = new Rectangle(_boxes[n]);
 
 			// look for overlapping bounding boxes of colours 497
-			for (int m = n + 1; m < _nSegments; m++) {
-				if (_colours[m] != 497)
-					continue;
-				final Rectangle bounds2 = VisionUtils.dialateRectangle(
-						_boxes[m], 2, 2);
-				if (bounds.intersects(bounds2)) {
-					bounds.add(bounds2);
-					obj.add(_boxes[m]);
-					ignore[m] = true;
-				}
-			}
+			mergeOverlapping(n, new int[] { 497 }, 2, 2, bounds, obj, ignore);
 
 			// confirm secondary colours 288
 			obj = VisionUtils.dialateRectangle(obj, 2, 2);
@@ -417,8 +409,7 @@ public class VisionMBR {
 		ArrayList<Rectangle> objects = new ArrayList<Rectangle>();
 
 		// test for white birds (490)
-		Boolean ignore[] = new Boolean[_nSegments];
-		Arrays.fill(ignore, false);
+		boolean ignore[] = new boolean[_nSegments];
 
 		for (int n = 0; n < _nSegments; n++) {
 			if ((_colours[n] != 490) || ignore[n])
@@ -426,22 +417,11 @@ public class VisionMBR {
 
 			// dilate bounding box around colour 490
 			Rectangle bounds = VisionUtils.dialateRectangle(_boxes[n], 2, 2);
-			Rectangle obj = _boxes[n];
+			Rectangle obj = new Rectangle(_boxes[n]);
 
 			// look for overlapping bounding boxes of colour 490
-			for (int m = n + 1; m < _nSegments; m++) {
-				if (_colours[m] != 490
-						&& _colours[m] != 508
-						&& _colours[m] != 510)
-					continue;
-				final Rectangle bounds2 = VisionUtils.dialateRectangle(
-						_boxes[m], 2, 2);
-				if (bounds.intersects(bounds2)) {
-					bounds.add(bounds2);
-					obj.add(_boxes[m]);
-					ignore[m] = true;
-				}
-			}
+			mergeOverlapping(n, new int[] { 490, 508, 510 }, 2, 2, bounds, obj,
+					ignore);
 
 			// confirm secondary colour 510
 			obj = VisionUtils.dialateRectangle(obj, 2, 2);
@@ -510,8 +490,7 @@ public class VisionMBR {
 		ArrayList<Rectangle> objects = new ArrayList<Rectangle>();
 
 		// test for white birds (488)
-		Boolean ignore[] = new Boolean[_nSegments];
-		Arrays.fill(ignore, false);
+		boolean ignore[] = new boolean[_nSegments];
 
 		for (int n = 0; n < _nSegments; n++) {
 			if ((_colours[n] != 488) || ignore[n])
@@ -519,23 +498,11 @@ public class VisionMBR {
 
 			// dilate bounding box around colour 488
 			Rectangle bounds = VisionUtils.dialateRectangle(_boxes[n], 2, 2);
-			Rectangle obj = _boxes[n];
+			Rectangle obj = new Rectangle(_boxes[n]);
 
 			// look for overlapping bounding boxes of colour 488
-			for (int m = n + 1; m < _nSegments; m++) {
-				if (_colours[m] != 488
-						&& _colours[m] != 146
-						&& _colours[m] != 64
-						&& _colours[m] != 0)
-					continue;
-				final Rectangle bounds2 = VisionUtils.dialateRectangle(
-						_boxes[m], 2, 2);
-				if (bounds.intersects(bounds2)) {
-					bounds.add(bounds2);
-					obj.add(_boxes[m]);
-					ignore[m] = true;
-				}
-			}
+			mergeOverlapping(n, new int[] { 488, 146, 64, 0 }, 2, 2, bounds,
+					obj, ignore);
 
 			// confirm secondary colour
 			obj = VisionUtils.dialateRectangle(obj, 2, 2);
@@ -549,230 +516,15 @@ public class VisionMBR {
 		return objects;
 	}
 	public List<Rectangle> findStonesMBR() {
-		ArrayList<Rectangle> objects = new ArrayList<Rectangle>();
-
-		
-		Boolean ignorePixel[][] = new Boolean[_nHeight][_nWidth];
-
-		for (int i = 0; i < _nHeight; i++) {
-			for (int j = 0; j < _nWidth; j++) {
-				ignorePixel[i][j] = false;
-			}
-		}
-
-		for (int i = 0; i < _nHeight; i++) {
-			for (int j = 0; j < _nWidth; j++) {
-				if ((_scene[i][j] != 365) || ignorePixel[i][j])
-					continue;
-				Rectangle obj = new Rectangle(j, i, 0, 0);
-				LinkedList<Point> l = new LinkedList<Point>();
-				l.add(new Point(j, i));
-				ignorePixel[i][j] = true;
-				while (true) {
-					if (l.isEmpty())
-						break;
-					Point p = l.pop();
-					// check if the colours of the adjacent points of p is
-					// belong to stone
-					if (p.y < _nHeight - 1)
-						if ((_scene[p.y + 1][p.x] == 365)
-								&& !ignorePixel[p.y + 1][p.x]) {
-							l.add(new Point(p.x, p.y + 1));
-							obj.add(p.x, p.y + 1);
-						}
-					if (p.x < _nWidth - 1)
-						if ((_scene[p.y][p.x + 1] == 365)
-								&& !ignorePixel[p.y][p.x + 1]) {
-							l.add(new Point(p.x + 1, p.y));
-							obj.add(p.x + 1, p.y);
-						}
-
-					if (p.y > 0)
-						if ((_scene[p.y - 1][p.x] == 365)
-								&& !ignorePixel[p.y - 1][p.x]) {
-							l.add(new Point(p.x, p.y - 1));
-							obj.add(p.x, p.y - 1);
-						}
-
-					if (p.x > 0)
-						if ((_scene[p.y][p.x - 1] == 365)
-								&& !ignorePixel[p.y][p.x - 1]) {
-							l.add(new Point(p.x - 1, p.y));
-							obj.add(p.x - 1, p.y);
-						}
-
-					if (p.y < _nHeight - 1)
-						ignorePixel[p.y + 1][p.x] = true;
-					if (p.x < _nWidth - 1)
-						ignorePixel[p.y][p.x + 1] = true;
-					if (p.y > 0)
-						ignorePixel[p.y - 1][p.x] = true;
-					if (p.x > 0)
-						ignorePixel[p.y][p.x - 1] = true;
-
-				}
-				if (obj.width * obj.height > _regionThreshold
-						&& !(new Rectangle(0, 0, 190, 55).contains(obj)))
-					objects.add(obj);
-			}
-		}
-		return objects;
+		return findRegions(365, STONE_COLOURS);
 	}
 
 	public List<Rectangle> findIceMBR() {
-		ArrayList<Rectangle> objects = new ArrayList<Rectangle>();
-
-	
-		Boolean ignorePixel[][] = new Boolean[_nHeight][_nWidth];
-
-		for (int i = 0; i < _nHeight; i++) {
-			for (int j = 0; j < _nWidth; j++) {
-				ignorePixel[i][j] = false;
-			}
-
-		}
-
-		for (int i = 0; i < _nHeight; i++) {
-			for (int j = 0; j < _nWidth; j++) {
-				if ((_scene[i][j] != 311) || ignorePixel[i][j])
-					continue;
-				Rectangle obj = new Rectangle(j, i, 0, 0);
-				LinkedList<Point> l = new LinkedList<Point>();
-				l.add(new Point(j, i));
-				ignorePixel[i][j] = true;
-				while (true) {
-					if (l.isEmpty())
-						break;
-					Point p = l.pop();
-					// check if the colours of the adjacent points of p is
-					// belong to ice
-					if (p.y < _nHeight - 1)
-						if ((_scene[p.y + 1][p.x] == 311
-								|| _scene[p.y + 1][p.x] == 247 || _scene[p.y + 1][p.x] == 183)
-								&& !ignorePixel[p.y + 1][p.x]) {
-							l.add(new Point(p.x, p.y + 1));
-							obj.add(p.x, p.y + 1);
-						}
-					if (p.x < _nWidth - 1)
-						if ((_scene[p.y][p.x + 1] == 311
-								|| _scene[p.y][p.x + 1] == 247 || _scene[p.y][p.x + 1] == 183)
-								&& !ignorePixel[p.y][p.x + 1]) {
-							l.add(new Point(p.x + 1, p.y));
-							obj.add(p.x + 1, p.y);
-						}
-					if (p.y > 0)
-						if ((_scene[p.y - 1][p.x] == 311
-								|| _scene[p.y - 1][p.x] == 247 || _scene[p.y - 1][p.x] == 183)
-								&& !ignorePixel[p.y - 1][p.x]) {
-							l.add(new Point(p.x, p.y - 1));
-							obj.add(p.x, p.y - 1);
-						}
-					if (p.x > 0)
-						if ((_scene[p.y][p.x - 1] == 311
-								|| _scene[p.y][p.x - 1] == 247 || _scene[p.y][p.x - 1] == 183)
-								&& !ignorePixel[p.y][p.x - 1]) {
-							l.add(new Point(p.x - 1, p.y));
-							obj.add(p.x - 1, p.y);
-						}
-
-					if (p.y < _nHeight - 1)
-						ignorePixel[p.y + 1][p.x] = true;
-					if (p.x < _nWidth - 1)
-						ignorePixel[p.y][p.x + 1] = true;
-					if (p.y > 0)
-						ignorePixel[p.y - 1][p.x] = true;
-					if (p.x > 0)
-						ignorePixel[p.y][p.x - 1] = true;
-
-				}
-				if (obj.width * obj.height > _regionThreshold
-						&& !(new Rectangle(0, 0, 190, 55).contains(obj)))
-					objects.add(obj);
-			}
-		}
-		return objects;
+		return findRegions(311, ICE_COLOURS);
 	}
 
 	public List<Rectangle> findWoodMBR() {
-		ArrayList<Rectangle> objects = new ArrayList<Rectangle>();
-
-		
-		// Boolean ignore[] = new Boolean[_nSegments];
-		Boolean ignorePixel[][] = new Boolean[_nHeight][_nWidth];
-
-		for (int i = 0; i < _nHeight; i++) {
-			for (int j = 0; j < _nWidth; j++) {
-				ignorePixel[i][j] = false;
-			}
-
-		}
-
-		for (int i = 0; i < _nHeight; i++) {
-			for (int j = 0; j < _nWidth; j++) {
-				if ((_scene[i][j] != 481) || ignorePixel[i][j])
-					continue;
-				Rectangle obj = new Rectangle(j, i, 0, 0);
-				LinkedList<Point> l = new LinkedList<Point>();
-				List<Point> pointBag = new ArrayList<Point>();
-				l.add(new Point(j, i));
-				pointBag.add(new Point(j, i));
-				ignorePixel[i][j] = true;
-				while (true) {
-					if (l.isEmpty())
-						break;
-					Point p = l.pop();
-					// check if the colours of the adjacent points of p is
-					// belong to wood
-					if (p.y < _nHeight - 1)
-						if ((_scene[p.y + 1][p.x] == 481
-								|| _scene[p.y + 1][p.x] == 408 || _scene[p.y + 1][p.x] == 417)
-								&& !ignorePixel[p.y + 1][p.x]) {
-							l.add(new Point(p.x, p.y + 1));
-							obj.add(p.x, p.y + 1);
-							pointBag.add(new Point(p.x, p.y + 1));
-						}
-					if (p.x < _nWidth - 1)
-						if ((_scene[p.y][p.x + 1] == 481
-								|| _scene[p.y][p.x + 1] == 408 || _scene[p.y][p.x + 1] == 417)
-								&& !ignorePixel[p.y][p.x + 1]) {
-							l.add(new Point(p.x + 1, p.y));
-							obj.add(p.x + 1, p.y);
-							pointBag.add(new Point(p.x + 1, p.y));
-						}
-					if (p.y > 0)
-						if ((_scene[p.y - 1][p.x] == 481
-								|| _scene[p.y - 1][p.x] == 408 || _scene[p.y - 1][p.x] == 417)
-								&& !ignorePixel[p.y - 1][p.x]) {
-							l.add(new Point(p.x, p.y - 1));
-							obj.add(p.x, p.y - 1);
-							pointBag.add(new Point(p.x, p.y - 1));
-						}
-					if (p.x > 0)
-						if ((_scene[p.y][p.x - 1] == 481
-								|| _scene[p.y][p.x - 1] == 408 || _scene[p.y][p.x - 1] == 417)
-								&& !ignorePixel[p.y][p.x - 1]) {
-							l.add(new Point(p.x - 1, p.y));
-							obj.add(p.x - 1, p.y);
-							pointBag.add(new Point(p.x - 1, p.y));
-						}
-
-					if (p.y < _nHeight - 1)
-						ignorePixel[p.y + 1][p.x] = true;
-					if (p.x < _nWidth - 1)
-						ignorePixel[p.y][p.x + 1] = true;
-					if (p.y > 0)
-						ignorePixel[p.y - 1][p.x] = true;
-					if (p.x > 0)
-						ignorePixel[p.y][p.x - 1] = true;
-
-				}
-				if (obj.width * obj.height > _regionThreshold
-						&& !(new Rectangle(0, 0, 190, 55).contains(obj)))
-					objects.add(obj);
-			}
-		}
-
-		return objects;
+		return findRegions(481, WOOD_COLOURS);
 	}
 	
 	public List<ABObject> findTNTs()
@@ -783,8 +535,7 @@ public class VisionMBR {
 	public List<Rectangle> findTNTsMBR() {
 		ArrayList<Rectangle> objects = new ArrayList<Rectangle>();
 
-		Boolean ignore[] = new Boolean[_nSegments];
-		Arrays.fill(ignore, false);
+		boolean ignore[] = new boolean[_nSegments];
 
 		for (int n = 0; n < _nSegments; n++) {
 			if ((_colours[n] != 410) || ignore[n])
@@ -792,21 +543,11 @@ public class VisionMBR {
 
 			// dilate bounding box around colour 410
 			Rectangle bounds = VisionUtils.dialateRectangle(_boxes[n], 2, 2);
-			Rectangle obj = _boxes[n];
+			Rectangle obj = new Rectangle(_boxes[n]);
 
 			// look for overlapping bounding boxes of colour 410
-			for (int m = n + 1; m < _nSegments; m++) {
-				if (_colours[m] != 410
-						&& _colours[m] != 418)
-					continue;
-				final Rectangle bounds2 = VisionUtils.dialateRectangle(
-						_boxes[m], 2, 2);
-				if (bounds.intersects(bounds2)) {
-					bounds.add(bounds2);
-					obj.add(_boxes[m]);
-					ignore[m] = true;
-				}
-			}
+			mergeOverlapping(n, new int[] { 410, 418 }, 2, 2, bounds, obj,
+					ignore);
 
 			obj = VisionUtils.dialateRectangle(obj, 2, 2);
 			obj = VisionUtils.cropBoundingBox(obj, _nWidth, _nHeight);
@@ -1096,7 +837,18 @@ public class VisionMBR {
 			return null;
 		}
 
-		return _colours[_segments[p.y][p.x]];
+		return _colours[_segments[p.y * _nWidth + p.x]];
+	}
+
+	// query the number of pixels in the segment at given pixel
+	public int querySize(Point p) {
+		if ((p.x >= _nWidth) || (p.y >= _nHeight)) {
+			System.err.println("pixel (" + p.x + ", " + p.y
+					+ ") is out of range");
+			return 0;
+		}
+
+		return _areas[_segments[p.y * _nWidth + p.x]];
 	}
 
 	// query colours within given bounding box
@@ -1121,7 +873,7 @@ public class VisionMBR {
 			for (int x = r.x; x < r.x + r.width; x++) {
 				if ((x < 0) || (x >= _nWidth))
 					continue;
-				h[_colours[_segments[y][x]]] += 1;
+				h[_colours[_segments[y * _nWidth + x]]] += 1;
 			}
 		}
 
@@ -1129,7 +881,7 @@ public class VisionMBR {
 	}
 
 	// perform preprocessing of a new screenshot
-	private void processScreenShot(BufferedImage screenshot) {
+	private void processScreenShot(FrameBuffer screenshot) {
 		// extract width and height
 		_nHeight = screenshot.getHeight();
 		_nWidth = screenshot.getWidth();
@@ -1139,10 +891,13 @@ public class VisionMBR {
 		}
 
 		// quantize to 3-bit colour
+		final int[] pixels = screenshot.getPixels();
+		final int stride = screenshot.getStride();
 		_scene = new int[_nHeight][_nWidth];
 		for (int y = 0; y < _nHeight; y++) {
+			int i = screenshot.getOffset() + y * stride;
 			for (int x = 0; x < _nWidth; x++) {
-				final int colour = screenshot.getRGB(x, y);
+				final int colour = pixels[i + x];
 				_scene[y][x] = ((colour & 0x00e00000) >> 15)
 						| ((colour & 0x0000e000) >> 10)
 						| ((colour & 0x000000e0) >> 5);
@@ -1150,20 +905,116 @@ public class VisionMBR {
 			}
 		}
 
-		// find connected components
-		_segments = VisionUtils.findConnectedComponents(_scene);
-		_nSegments = VisionUtils.countComponents(_segments);
+		// find connected components, their colours, bounding boxes and areas
+		labelSegments();
 		// System.out.println("...found " + _nSegments + " components");
+	}
+
+	/*
+	 * Label the 4-connected components of equal colour in _scene. The first
+	 * pass gives every pixel a provisional label and merges the labels of
+	 * equal coloured left and upper neighbours with union-find, always
+	 * keeping the smaller label as root. The smallest label of a component
+	 * is that of its first pixel in raster order, so numbering the roots in
+	 * order gives the same segment numbers as a flood fill in raster order.
+	 * The second pass relabels the pixels and collects each segment's
+	 * colour, bounding box and area.
+	 */
+	private void labelSegments() {
+		final int size = _nWidth * _nHeight;
+		final int[] labels = new int[size];
+		final int[] parent = new int[size];
+		int nLabels = 0;
+
+		// first pass: provisional labels
+		for (int y = 0; y < _nHeight; y++) {
+			final int[] row = _scene[y];
+			final int[] above = (y > 0) ? _scene[y - 1] : null;
+			final int base = y * _nWidth;
+			for (int x = 0; x < _nWidth; x++) {
+				final int colour = row[x];
+				final boolean left = (x > 0) && (row[x - 1] == colour);
+				final boolean up = (above != null) && (above[x] == colour);
+				int label;
+				if (left) {
+					label = labels[base + x - 1];
+					if (up)
+						label = union(parent, label, labels[base - _nWidth + x]);
+				} else if (up) {
+					label = labels[base - _nWidth + x];
+				} else {
+					label = nLabels++;
+					parent[label] = label;
+				}
+				labels[base + x] = label;
+			}
+		}
 
+		// number the roots in order, every other label points to a smaller one
+		_nSegments = 0;
+		for (int i = 0; i < nLabels; i++) {
+			if (parent[i] == i)
+				parent[i] = _nSegments++;
+			else
+				parent[i] = parent[parent[i]];
+		}
+
+		// second pass: final labels and per-segment statistics
 		_colours = new int[_nSegments];
+		_areas = new int[_nSegments];
+		final int[] minX = new int[_nSegments];
+		final int[] minY = new int[_nSegments];
+		final int[] maxX = new int[_nSegments];
+		final int[] maxY = new int[_nSegments];
+		final int[] firstX = new int[_nSegments];
+		Arrays.fill(minX, Integer.MAX_VALUE);
+		Arrays.fill(minY, Integer.MAX_VALUE);
 		for (int y = 0; y < _nHeight; y++) {
+			final int[] row = _scene[y];
+			final int base = y * _nWidth;
 			for (int x = 0; x < _nWidth; x++) {
-				_colours[_segments[y][x]] = _scene[y][x];
+				final int n = parent[labels[base + x]];
+				labels[base + x] = n;
+				if (_areas[n]++ == 0)
+					firstX[n] = x;
+				_colours[n] = row[x];
+				if (x < minX[n]) minX[n] = x;
+				if (x > maxX[n]) maxX[n] = x;
+				if (y < minY[n]) minY[n] = y;
+				if (y > maxY[n]) maxY[n] = y;
 			}
 		}
+		_segments = labels;
+
+		// same boxes as Rectangle(x, y, 1, 1) at the first pixel grown with
+		// add(x, y), which only covers the first pixel's far edge
+		_boxes = new Rectangle[_nSegments];
+		for (int n = 0; n < _nSegments; n++) {
+			_boxes[n] = new Rectangle(minX[n], minY[n],
+					Math.max(maxX[n], firstX[n] + 1) - minX[n],
+					Math.max(maxY[n], minY[n] + 1) - minY[n]);
+		}
+	}
 
-		// find bounding boxes and segment colours
-		_boxes = VisionUtils.findBoundingBoxes(_segments);
+	// merge the sets of labels a and b, returning the (smaller) root
+	private static int union(int[] parent, int a, int b) {
+		a = find(parent, a);
+		b = find(parent, b);
+		if (a < b) {
+			parent[b] = a;
+			return a;
+		}
+		parent[a] = b;
+		return b;
+	}
+
+	private static int find(int[] parent, int label) {
+		while (parent[label] != label) {
+			// halve the path on the way up
+			parent[label] = parent[parent[label]];
+			label = parent[label];
+		}
+		return label;
 	}
 
 
@@ -57,6 +57,11 @@ public class VisionRealShape
     private int _ground = 0;
     
     public VisionRealShape(BufferedImage screenshot)
+    {
+        this(new FrameBuffer(screenshot));
+    }
+    
+    public VisionRealShape(FrameBuffer screenshot)
     {
         // initialise screen size
         _width = screenshot.getWidth();
@@ -342,8 +347,8 @@ public class VisionRealShape
 
 	public static void main(String args[])
 	{
-		new ActionRobot();
-		BufferedImage screenshot = ActionRobot.doScreenShot();
+		ActionRobot robot = new ActionRobot();
+		BufferedImage screenshot = ActionRobot.doScreenShot(robot.getEndpoint());
 		Vision vision = new Vision(screenshot);
 		//List<ABObject> objs = vision.findBlocksRealShape();
 		//List<ABObject> objs = vision.findHills();
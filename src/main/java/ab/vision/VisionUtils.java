@@ -76,16 +76,24 @@ public class VisionUtils {
 
     // compute the absolute difference between two images
     public static int imageDifference(BufferedImage imgA, BufferedImage imgB) {
+        return imageDifference(new FrameBuffer(imgA), new FrameBuffer(imgB));
+    }
+
+    public static int imageDifference(FrameBuffer imgA, FrameBuffer imgB) {
 
         int height = Math.min(imgA.getHeight(), imgB.getHeight());
         int width = Math.min(imgA.getWidth(), imgB.getWidth());
+        final int[] pixelsA = imgA.getPixels();
+        final int[] pixelsB = imgB.getPixels();
 
         int n = imgA.getWidth() * imgA.getHeight() + imgB.getWidth() * imgB.getHeight() - 2 * width * height;
         int diff = 3 * 255 * n;
         for (int y = 0; y < height; y++) {
+            int rowA = imgA.getOffset() + y * imgA.getStride();
+            int rowB = imgB.getOffset() + y * imgB.getStride();
             for (int x = 0; x < width; x++) {
-                final int colourA = imgA.getRGB(x, y);
-                final int colourB = imgB.getRGB(x, y);
+                final int colourA = pixelsA[rowA + x];
+                final int colourB = pixelsB[rowB + x];
 
                 diff += Math.abs((int)((colourA & 0x00ff0000) >> 16) - (int)((colourB & 0x00ff0000) >> 16));
                 diff += Math.abs((int)((colourA & 0x0000ff00) >> 8) - (int)((colourB & 0x0000ff00) >> 8));
@@ -523,15 +531,21 @@ public class VisionUtils {
 	
 	
 	public 	static int[][] computeMetaInformation(BufferedImage screenshot) {
+		return computeMetaInformation(new FrameBuffer(screenshot));
+	}
+
+	public 	static int[][] computeMetaInformation(FrameBuffer screenshot) {
 		// image size
 		final int nHeight = screenshot.getHeight();
 		final int nWidth = screenshot.getWidth();
+		final int[] pixels = screenshot.getPixels();
 
 		// meta debugging information
 		int[][] meta = new int[nHeight][nWidth];
 		for (int y = 0; y < nHeight; y++) {
+			int row = screenshot.getOffset() + y * screenshot.getStride();
 			for (int x = 0; x < nWidth; x++) {
-				final int colour = screenshot.getRGB(x, y);
+				final int colour = pixels[row + x];
 				meta[y][x] = ((colour & 0x00e00000) >> 15)
 						| ((colour & 0x0000e000) >> 10)
 						| ((colour & 0x000000e0) >> 5);
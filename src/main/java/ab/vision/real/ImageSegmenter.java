@@ -16,6 +16,8 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.Queue;
 
+import ab.vision.FrameBuffer;
+
 
 public class ImageSegmenter {
 
@@ -188,6 +190,14 @@ public class ImageSegmenter {
      * @param   screenshot of the game
      */
     public ImageSegmenter(BufferedImage screenshot)
+    {
+        this(new FrameBuffer(screenshot));
+    }
+    
+    /* Build a segmentation from a screenshot already read into a FrameBuffer
+     * @param   screenshot of the game
+     */
+    public ImageSegmenter(FrameBuffer screenshot)
     {
         // if the structure builder is run for the first time
         if (_firstTime)
@@ -204,10 +214,12 @@ public class ImageSegmenter {
         _hue = new int[_height][_width];
         _sat = new int[_height][_width];
         _val = new int[_height][_width];
+        final int[] pixels = screenshot.getPixels();
+        final int stride = screenshot.getStride();
         for (int y = 0; y < _height; y++)
         for (int x = 0; x < _width; x++)
         {
-            int color = screenshot.getRGB(x, y);
+            int color = pixels[screenshot.getOffset() + y * stride + x];
             int r = (color >> 16) & 0xff;
             int g = (color >> 8) & 0xff;
             int b = color & 0xff;
@@ -504,17 +516,24 @@ public class ImageSegmenter {
       * @return  compressed bits (indexed as [y][x])
       */
     public static int[][] compressImage(BufferedImage image)
+    {
+        return compressImage(new FrameBuffer(image));
+    }
+    
+    public static int[][] compressImage(FrameBuffer image)
     {
         int height = image.getHeight();
         int width = image.getWidth();
+        int pixels[] = image.getPixels();
         
         int ret[][] = new int[height][width];
         for (int y = 0; y < height; y++)
         {
+            int row = image.getOffset() + y * image.getStride();
             for (int x = 0; x < width; x++)
             {
                 // decode the integer color to and compress it to 15 bits
-                int color = image.getRGB(x, y);
+                int color = pixels[row + x];
                 int r = (color >> 19) & 31;
                 int g = (color >> 11) & 31;
                 int b = (color >> 3) & 31;
@@ -9,8 +9,64 @@
 
 package external;
 
-/*encode the messages to byte[]*/
+import java.nio.ByteBuffer;
+
+/*encode the messages to byte[]. The put methods write the same messages
+ *into a caller-supplied ByteBuffer (big-endian, the buffer default) instead,
+ *without allocating; each returns the buffer.*/
 public class ClientMessageEncoder {
+	//length of a shot: opcode and six ints
+	public static final int SHOT_LENGTH = 1 + 6 * 4;
+	//most shots in one sequence, the count is sent as one unsigned byte
+	public static final int MAX_SEQUENCE = 255;
+
+	//write a message that is just its opcode, e.g. doScreenShot or getState
+	public static ByteBuffer put(ByteBuffer buffer, ClientMessageTable message) {
+		return buffer.put(ClientMessageTable.getValue(message));
+	}
+
+	//write a configure message, id being the 4 byte team id
+	public static ByteBuffer putConfigure(ByteBuffer buffer, byte[] id) {
+		return put(buffer, ClientMessageTable.configure).put(id);
+	}
+
+	//write a loadLevel message, level 0 loads the next level
+	public static ByteBuffer putLoadLevel(ByteBuffer buffer, int level) {
+		return put(buffer, ClientMessageTable.loadLevel).put((byte) level);
+	}
+
+	//write a shot; shot is one of cshoot, pshoot, cFastshoot, pFastshoot
+	public static ByteBuffer putShot(ByteBuffer buffer, ClientMessageTable shot,
+			int fx, int fy, int dx, int dy, int t1, int t2) {
+		return put(buffer, shot).putInt(fx).putInt(fy).putInt(dx).putInt(dy)
+				.putInt(t1).putInt(t2);
+	}
+
+	//write a shot sequence (shootSeq or shootSeqFast) of cshoot shots, each
+	//shot being {fx, fy, dx, dy, t1, t2}
+	public static ByteBuffer putShotSequence(ByteBuffer buffer,
+			ClientMessageTable sequence, int[]... shots) {
+		if (shots.length > MAX_SEQUENCE)
+			throw new IllegalArgumentException(shots.length
+					+ " shots in one sequence, at most " + MAX_SEQUENCE + " allowed");
+		put(buffer, sequence).put((byte) shots.length);
+		for (int[] shot : shots)
+			putShot(buffer, ClientMessageTable.cshoot, shot[0], shot[1],
+					shot[2], shot[3], shot[4], shot[5]);
+		return buffer;
+	}
+
+	//number of bytes putShotSequence writes
+	public static int shotSequenceLength(int shots) {
+		return 2 + shots * SHOT_LENGTH;
+	}
+
+	//number of bytes LocalCompetitionServer replies to a shot (1) or a shot
+	//sequence: one acknowledgement byte per shot. Clients should treat it
+	//as the most to expect, see ClientActionRobot.readShotReply
+	public static int shotReplyLength(int shots) {
+		return shots;
+	}
 
 	//encode screenshot message
 	public static byte[] encodeDoScreenShot() {
@@ -120,6 +176,12 @@ public class ClientMessageEncoder {
 				.getValue(ClientMessageTable.getState) };
 		return message;
 	}
+	//encode getCurrentLevel message
+	public static byte[] getCurrentLevel() {
+		byte[] message = { ClientMessageTable
+				.getValue(ClientMessageTable.getCurrentLevel) };
+		return message;
+	}
 	//encode  get best scores message 
 	public static byte[] getBestScores() 
 	{